@@ -46,6 +46,14 @@ public class ClientPluginChannelsClient extends ClientPluginChannels
         this.sendRegisteredPluginChannels(netHandler);
     }
 
+    /**
+     * Send messages queued during the tick
+     */
+    void onTick()
+    {
+        this.flushQueuedMessages();
+    }
+
     /**
      * Callback for the plugin channel hook
      * 
@@ -116,7 +124,9 @@ public class ClientPluginChannelsClient extends ClientPluginChannels
 
             if (minecraft.player != null && minecraft.player.connection != null)
             {
+                int length = payload.getBufferData().readableBytes();
                 minecraft.player.connection.sendPacket(payload);
+                ClientPluginChannels.onMessageSent(payload.getChannelName(), length);
                 return true;
             }
         }
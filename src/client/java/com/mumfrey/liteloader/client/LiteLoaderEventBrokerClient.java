@@ -13,6 +13,7 @@ import com.mumfrey.liteloader.*;
 import com.mumfrey.liteloader.PlayerInteractionListener.MouseButton;
 import com.mumfrey.liteloader.client.overlays.IEntityRenderer;
 import com.mumfrey.liteloader.common.LoadingProgress;
+import com.mumfrey.liteloader.core.ClientPluginChannels;
 import com.mumfrey.liteloader.core.InterfaceRegistrationDelegate;
 import com.mumfrey.liteloader.core.LiteLoader;
 import com.mumfrey.liteloader.core.LiteLoaderEventBroker;
@@ -439,6 +440,16 @@ public class LiteLoaderEventBrokerClient extends LiteLoaderEventBroker<Minecraft
             this.worldHashCode = worldHashCode;
             super.onWorldChanged(minecraft.world);
         }
+
+        // Send plugin channel messages which mods queued during the tick
+        if (clock)
+        {
+            ClientPluginChannels clientPluginChannels = LiteLoader.getClientPluginChannels();
+            if (clientPluginChannels instanceof ClientPluginChannelsClient)
+            {
+                ((ClientPluginChannelsClient)clientPluginChannels).onTick();
+            }
+        }
     }
 
     /**
@@ -13,6 +13,7 @@ import com.mumfrey.liteloader.api.CoreProvider;
 import com.mumfrey.liteloader.api.CustomisationProvider;
 import com.mumfrey.liteloader.api.InterfaceProvider;
 import com.mumfrey.liteloader.api.Observer;
+import com.mumfrey.liteloader.common.transformers.PacketHooks;
 import com.mumfrey.liteloader.client.LiteLoaderCoreProviderClient;
 import com.mumfrey.liteloader.client.ResourceObserver;
 import com.mumfrey.liteloader.client.Translator;
@@ -133,7 +134,8 @@ public class LiteLoaderCoreAPIClient extends LiteLoaderCoreAPI
     {
         return ImmutableList.<Observer>of
         (
-            new ModEvents()
+            new ModEvents(),
+            new PacketHooks()
         );
     }
 
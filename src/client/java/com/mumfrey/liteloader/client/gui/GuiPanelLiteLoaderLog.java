@@ -19,26 +19,77 @@ import com.mumfrey.liteloader.util.net.LiteLoaderLogUpload;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiButton;
+import net.minecraft.client.gui.GuiTextField;
 import net.minecraft.client.gui.ScaledResolution;
 import net.minecraft.client.resources.I18n;
 import net.minecraft.util.Session;
 
 /**
+ * Log viewer panel, new lines are appended incrementally from the logger and
+ * only the rows inside the scroll viewport are drawn
  *
  * @author Adam Mummery-Smith
  */
 class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
 {
+    /**
+     * Maximum number of lines kept by the panel
+     */
+    private static final int MAX_LINES = 2000;
+
+    private static final int LINE_HEIGHT = 10;
+
     private static boolean useNativeRes = true;
 
+    /**
+     * A log line with its colour and search key precomputed
+     */
+    static final class LogLine
+    {
+        final String text;
+
+        /**
+         * Lower case text without the timestamp, used for colouring and
+         * filtering
+         */
+        final String key;
+
+        final int colour;
+
+        LogLine(String text)
+        {
+            this.text = text;
+            this.key = text.length() > 11 ? text.substring(11).toLowerCase() : text.toLowerCase();
+            this.colour = GuiPanelLiteLoaderLog.getMessageColour(this.key);
+        }
+
+        boolean matches(String filter)
+        {
+            return filter.isEmpty() || this.key.contains(filter);
+        }
+    }
+
     /**
      * Scroll pane
      */
     private GuiScrollPanel scrollPane;
 
-    private List<String> logEntries = new ArrayList<String>();
+    /**
+     * All lines read from the log so far
+     */
+    private List<LogLine> logEntries = new ArrayList<LogLine>();
+
+    /**
+     * Lines matching the current filter, same instance as logEntries when no
+     * filter is set
+     */
+    private List<LogLine> visibleEntries = this.logEntries;
 
-    private long logIndex = -1;
+    private long logIndex = 0;
+
+    private GuiTextField txtFilter;
+
+    private String filter = "";
 
     private GuiCheckbox chkScale;
 
@@ -69,18 +120,73 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
         this.scrollPane = new GuiScrollPanel(minecraft, this, MARGIN, TOP, this.width - (MARGIN * 2), this.height - TOP - BOTTOM);
     }
 
+    /**
+     * Append lines logged since the last update
+     */
     private void updateLog()
     {
-        this.logEntries = LiteLoaderLogger.getLogTail();
-        this.logIndex = LiteLoaderLogger.getLogIndex();
+        List<String> lines = new ArrayList<String>();
+        this.logIndex = LiteLoaderLogger.readLog(this.logIndex, lines);
+
+        for (String text : lines)
+        {
+            LogLine line = new LogLine(text);
+            this.logEntries.add(line);
+            if (this.visibleEntries != this.logEntries && line.matches(this.filter))
+            {
+                this.visibleEntries.add(line);
+            }
+        }
+
+        if (this.logEntries.size() > GuiPanelLiteLoaderLog.MAX_LINES)
+        {
+            this.logEntries.subList(0, this.logEntries.size() - GuiPanelLiteLoaderLog.MAX_LINES).clear();
+            this.applyFilter();
+        }
+
         this.scrollPane.updateHeight();
         this.scrollPane.scrollToBottom();
     }
 
+    /**
+     * Rebuild the list of lines matching the current filter
+     */
+    private void applyFilter()
+    {
+        if (this.filter.isEmpty())
+        {
+            this.visibleEntries = this.logEntries;
+            return;
+        }
+
+        List<LogLine> visibleEntries = new ArrayList<LogLine>();
+        for (LogLine line : this.logEntries)
+        {
+            if (line.matches(this.filter))
+            {
+                visibleEntries.add(line);
+            }
+        }
+
+        this.visibleEntries = visibleEntries;
+    }
+
+    private void setFilter(String filter)
+    {
+        filter = filter.trim().toLowerCase();
+        if (!filter.equals(this.filter))
+        {
+            this.filter = filter;
+            this.applyFilter();
+            this.scrollPane.updateHeight();
+            this.scrollPane.scrollToBottom();
+        }
+    }
+
     @Override
     public int getScrollPanelContentHeight(GuiScrollPanel source)
     {
-        return (int)(this.logEntries.size() * 10 / (this.chkScale.checked ? this.guiScale : 1.0F));
+        return (int)(this.visibleEntries.size() * GuiPanelLiteLoaderLog.LINE_HEIGHT / (this.chkScale.checked ? this.guiScale : 1.0F));
     }
 
     /**
@@ -103,6 +209,9 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
 
         this.chkScale.checked = GuiPanelLiteLoaderLog.useNativeRes;
 
+        this.txtFilter = new GuiTextField(5, this.mc.fontRenderer, this.width - MARGIN - 120, TOP - 18, 120, 12);
+        this.txtFilter.setText(this.filter);
+
         ScaledResolution res = new ScaledResolution(this.mc);
         this.guiScale = res.getScaleFactor();
 
@@ -135,6 +244,11 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
     {
         this.throb++;
 
+        if (this.txtFilter != null)
+        {
+            this.txtFilter.updateCursorCounter();
+        }
+
         if (LiteLoaderLogger.getLogIndex() > this.logIndex)
         {
             this.updateLog();
@@ -195,6 +309,13 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
         // Draw panel title
         this.mc.fontRenderer.drawString(I18n.format("gui.log.title"), MARGIN, TOP - 14, 0xFFFFFFFF);
 
+        // Draw filter box
+        this.txtFilter.drawTextBox();
+        if (this.filter.isEmpty() && !this.txtFilter.isFocused())
+        {
+            this.mc.fontRenderer.drawString(I18n.format("gui.log.filter"), this.width - MARGIN - 116, TOP - 16, 0xFF666666);
+        }
+
         // Draw top and bottom horizontal bars
         drawRect(MARGIN, TOP - 4, this.width - MARGIN, TOP - 3, 0xFF999999);
         drawRect(MARGIN, this.height - BOTTOM + 2, this.width - MARGIN, this.height - BOTTOM + 3, 0xFF999999);
@@ -233,7 +354,6 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
     @Override
     public void drawScrollPanelContent(GuiScrollPanel source, int mouseX, int mouseY, float partialTicks, int scrollAmount, int visibleHeight)
     {
-        int yPos = 0;
         int height = this.innerHeight;
 
         if (this.chkScale.checked)
@@ -245,13 +365,15 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
             scrollAmount = (int)(scrollAmount * this.guiScale);
         }
 
-        for (String logLine : this.logEntries)
+        // Only draw the rows inside the viewport
+        List<LogLine> lines = this.visibleEntries;
+        int first = Math.max(0, scrollAmount / GuiPanelLiteLoaderLog.LINE_HEIGHT);
+        int last = Math.min(lines.size(), (scrollAmount + height) / GuiPanelLiteLoaderLog.LINE_HEIGHT + 1);
+
+        for (int row = first; row < last; row++)
         {
-            if (yPos > scrollAmount - 10 && yPos <= scrollAmount + height)
-            {
-                this.mc.fontRenderer.drawString(logLine, 0, yPos, this.getMessageColour(logLine.toLowerCase().substring(11)));
-            }
-            yPos += 10;
+            LogLine line = lines.get(row);
+            this.mc.fontRenderer.drawString(line.text, 0, row * GuiPanelLiteLoaderLog.LINE_HEIGHT, line.colour);
         }
     }
 
@@ -260,7 +382,7 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
     {
     }
 
-    private int getMessageColour(String logLine)
+    static int getMessageColour(String logLine)
     {
         if (logLine.startsWith("liteloader")) return 0xFFFFFF;
         if (logLine.startsWith("active pack:")) return 0xFFFF55;
@@ -346,6 +468,7 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
     @Override
     void mousePressed(int mouseX, int mouseY, int mouseButton)
     {
+        this.txtFilter.mouseClicked(mouseX, mouseY, mouseButton);
         this.scrollPane.mousePressed(mouseX, mouseY, mouseButton);
 
         super.mousePressed(mouseX, mouseY, mouseButton);
@@ -379,6 +502,13 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
     void keyPressed(char keyChar, int keyCode)
     {
         if (keyCode == Keyboard.KEY_ESCAPE) this.close();
+
+        if (this.txtFilter.textboxKeyTyped(keyChar, keyCode))
+        {
+            this.setFilter(this.txtFilter.getText());
+            return;
+        }
+
         if (keyCode == Keyboard.KEY_SPACE) this.actionPerformed(this.chkScale);
 
         this.scrollPane.keyPressed(keyChar, keyCode);
@@ -390,9 +520,9 @@ class GuiPanelLiteLoaderLog extends GuiPanel implements ScrollPanelContent
 
         StringBuilder completeLog = new StringBuilder();
 
-        for (String logLine : this.logEntries)
+        for (LogLine logLine : this.logEntries)
         {
-            completeLog.append(logLine).append("\r\n");
+            completeLog.append(logLine.text).append("\r\n");
         }
 
         LiteLoaderLogger.info("Uploading log file to liteloader...");
@@ -71,7 +71,7 @@ public class LoadingBar extends LoadingProgress
     private boolean calculatedColour = false;
     private int barLuma = 0, r2 = 246, g2 = 136, b2 = 62;
 
-    private int logIndex = 0;
+    private long logIndex = 0;
     private List<String> logTail = new ArrayList<String>();
 
     public LoadingBar()
@@ -363,7 +363,11 @@ public class LoadingBar extends LoadingProgress
     {
         if (this.logIndex != LiteLoaderLogger.getLogIndex())
         {
-            this.logTail = LiteLoaderLogger.getLogTail();
+            this.logIndex = LiteLoaderLogger.readLog(this.logIndex, this.logTail);
+            if (this.logTail.size() > 500)
+            {
+                this.logTail.subList(0, this.logTail.size() - 500).clear();
+            }
         }
 
         for (int logIndex = this.logTail.size() - 1; yPos > 10 && logIndex >= 0; logIndex--)
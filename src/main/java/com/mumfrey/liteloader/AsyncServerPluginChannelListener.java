@@ -0,0 +1,26 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader;
+
+/**
+ * Interface for server plugin channel listeners which are thread-safe and
+ * want their messages to be dispatched off the server thread.
+ * {@link #onCustomPayload} is called on a LiteLoader worker thread, messages
+ * from the same player on the same channel are always delivered one at a time
+ * and in the order they were received, but messages from different players or
+ * on different channels may be delivered concurrently.
+ *
+ * <p>The payload passed to the listener is a private copy so it remains valid
+ * after the packet has been processed. Listeners must not touch the world or
+ * the player from the worker thread, work which needs to happen on the server
+ * thread should be scheduled there using
+ * {@link net.minecraft.server.MinecraftServer#addScheduledTask}.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface AsyncServerPluginChannelListener extends ServerPluginChannelListener
+{
+}
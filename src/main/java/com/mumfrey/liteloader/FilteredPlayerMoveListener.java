@@ -0,0 +1,41 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader;
+
+/**
+ * Interface for player move listeners which are only interested in moves
+ * beyond a certain threshold. The thresholds are measured from the position
+ * at which the listener was last notified for the same player, rather than
+ * from the previous packet, so slow movements still accumulate. The
+ * thresholds are read once when the listener is registered.
+ *
+ * <p>Filtered listeners are called after all unfiltered
+ * {@link PlayerMoveListener}s have allowed the move.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface FilteredPlayerMoveListener extends PlayerMoveListener
+{
+    /**
+     * Get the minimum distance in blocks the player must move before the
+     * listener is notified, 0 to be notified of any movement or a negative
+     * value to ignore movement
+     */
+    public abstract double getMoveThreshold();
+
+    /**
+     * Get the minimum change in yaw or pitch in degrees before the listener is
+     * notified, 0 to be notified of any rotation or a negative value to ignore
+     * rotation
+     */
+    public abstract float getLookThreshold();
+
+    /**
+     * Return true to only be notified when the player moves into a different
+     * block, in which case the thresholds are ignored
+     */
+    public abstract boolean isBlockChangeOnly();
+}
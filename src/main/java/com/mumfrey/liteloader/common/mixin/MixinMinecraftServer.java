@@ -24,4 +24,10 @@ public abstract class MixinMinecraftServer
     {
         this.broker.onServerTick((MinecraftServer)(Object)this);
     }
+
+    @Inject(method = "updateTimeLightAndEntities()V", at = @At("RETURN"))
+    private void onServerTickEnd(CallbackInfo ci)
+    {
+        this.broker.onServerTickEnd((MinecraftServer)(Object)this);
+    }
 }
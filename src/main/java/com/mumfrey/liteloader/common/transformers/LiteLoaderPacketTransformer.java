@@ -11,6 +11,7 @@ import com.mumfrey.liteloader.transformers.event.EventInjectionTransformer;
 import com.mumfrey.liteloader.transformers.event.InjectionPoint;
 import com.mumfrey.liteloader.transformers.event.MethodInfo;
 import com.mumfrey.liteloader.transformers.event.inject.MethodHead;
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
 
 public class LiteLoaderPacketTransformer extends EventInjectionTransformer
 {
@@ -20,10 +21,20 @@ public class LiteLoaderPacketTransformer extends EventInjectionTransformer
         InjectionPoint methodHead = new MethodHead();
         MethodInfo handlePacket = new MethodInfo(Obf.PacketEvents, "handlePacket");
 
+        int hookedCount = 0;
         for (Packets packet : Packets.packets)
         {
+            // Packets nothing is interested in are left unhooked so that they don't incur any overhead
+            if (!PacketHooks.isHooked(packet.getIndex()))
+            {
+                continue;
+            }
+
+            hookedCount++;
             MethodInfo processPacket = new MethodInfo(packet, Obf.processPacket, Void.TYPE, Obf.INetHandler);
             this.addEvent(new PacketEvent(packet), processPacket, methodHead).addListener(handlePacket);
         }
+
+        LiteLoaderLogger.info("Hooking %d of %d packets", hookedCount, Packets.count());
     }
 }
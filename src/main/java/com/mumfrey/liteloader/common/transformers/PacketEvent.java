@@ -9,9 +9,12 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
 import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.VarInsnNode;
@@ -19,7 +22,6 @@ import org.objectweb.asm.tree.VarInsnNode;
 import com.mumfrey.liteloader.core.runtime.Obf;
 import com.mumfrey.liteloader.core.runtime.Packets;
 import com.mumfrey.liteloader.transformers.event.Event;
-import com.mumfrey.liteloader.transformers.event.EventInfo;
 
 /**
  * Special event used to hook all packets
@@ -55,22 +57,37 @@ public class PacketEvent extends Event
 
     /* (non-Javadoc)
      * @see com.mumfrey.liteloader.transformers.event.Event
-     *      #invokeEventInfoConstructor(org.objectweb.asm.tree.InsnList,
-     *      boolean)
+     *      #injectGuard(org.objectweb.asm.tree.InsnList)
      */
     @Override
-    protected int invokeEventInfoConstructor(InsnList insns, boolean cancellable, boolean pushReturnValue, int marshallVar)
+    protected LabelNode injectGuard(InsnList insns)
     {
-        int ctorMAXS = 0;
+        // if (!PacketEvents.hasListeners[packetIndex]) skip the event
+        LabelNode skipEvent = new LabelNode();
+        insns.add(new FieldInsnNode(Opcodes.GETSTATIC, Obf.PacketEvents.ref, "hasListeners", "[Z"));
+        insns.add(new IntInsnNode(Opcodes.SIPUSH, this.packetIndex));
+        insns.add(new InsnNode(Opcodes.BALOAD));
+        insns.add(new JumpInsnNode(Opcodes.IFEQ, skipEvent));
+        return skipEvent;
+    }
 
-        insns.add(new LdcInsnNode(this.name)); ctorMAXS++;
-        insns.add(this.methodIsStatic ? new InsnNode(Opcodes.ACONST_NULL) : new VarInsnNode(Opcodes.ALOAD, 0)); ctorMAXS++;
-        insns.add(new InsnNode(cancellable ? Opcodes.ICONST_1 : Opcodes.ICONST_0)); ctorMAXS++;
-        insns.add(new IntInsnNode(Opcodes.BIPUSH, this.packetIndex));
-        insns.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, this.eventInfoClass, Obf.constructor.name,
-                EventInfo.getConstructorDescriptor().replace(")", "I)"), false));
+    /* (non-Javadoc)
+     * @see com.mumfrey.liteloader.transformers.event.Event
+     *      #createEventInfo(org.objectweb.asm.tree.InsnList, boolean,
+     *      boolean, int)
+     */
+    @Override
+    protected int createEventInfo(InsnList insns, boolean cancellable, boolean pushReturnValue, int marshallVar)
+    {
+        // Use the per-thread EventInfo rather than allocating a new one for every packet
+        insns.add(new LdcInsnNode(this.name));
+        insns.add(this.methodIsStatic ? new InsnNode(Opcodes.ACONST_NULL) : new VarInsnNode(Opcodes.ALOAD, 0));
+        insns.add(new InsnNode(cancellable ? Opcodes.ICONST_1 : Opcodes.ICONST_0));
+        insns.add(new IntInsnNode(Opcodes.SIPUSH, this.packetIndex));
+        insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, this.eventInfoClass, "acquire",
+                "(Ljava/lang/String;Ljava/lang/Object;ZI)L" + this.eventInfoClass + ";", false));
 
-        return ctorMAXS;
+        return 4;
     }
 
     private static String getPacketEventName(Packets packet)
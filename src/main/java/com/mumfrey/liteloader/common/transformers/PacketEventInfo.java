@@ -9,16 +9,82 @@ import com.mumfrey.liteloader.transformers.event.EventInfo;
 
 import net.minecraft.network.Packet;
 
+/**
+ * EventInfo for packet events. Packet hooks obtain their EventInfo via
+ * {@link #acquire} which hands out a reusable instance for the current thread,
+ * so that dispatching a packet does not allocate. The instance is returned by
+ * {@link #release} once the event has been handled, if the hook is re-entered
+ * before then a new instance is allocated instead.
+ *
+ * @author Adam Mummery-Smith
+ *
+ * @param <S> Packet type
+ */
 public class PacketEventInfo<S extends Packet<?>> extends EventInfo<S>
 {
-    private final int packetId;
+    private static final ThreadLocal<PacketEventInfo<Packet<?>>> pooled = new ThreadLocal<PacketEventInfo<Packet<?>>>()
+    {
+        @Override
+        protected PacketEventInfo<Packet<?>> initialValue()
+        {
+            return new PacketEventInfo<Packet<?>>(null, null, false, -1, true);
+        }
+    };
+
+    private int packetId;
+
+    /**
+     * True if this is a per-thread instance
+     */
+    private final boolean reusable;
+
+    /**
+     * True while a reusable instance is handed out
+     */
+    private boolean inUse;
 
-    @SuppressWarnings("unchecked")
     public PacketEventInfo(String name, Object source, boolean cancellable, int packetId)
+    {
+        this(name, source, cancellable, packetId, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PacketEventInfo(String name, Object source, boolean cancellable, int packetId, boolean reusable)
     {
         super(name, (S)source, cancellable);
 
         this.packetId = packetId;
+        this.reusable = reusable;
+    }
+
+    /**
+     * Called by injected packet hooks to get an EventInfo for the specified
+     * packet, reuses the current thread's instance if it is available.
+     */
+    public static PacketEventInfo<Packet<?>> acquire(String name, Object source, boolean cancellable, int packetId)
+    {
+        PacketEventInfo<Packet<?>> eventInfo = PacketEventInfo.pooled.get();
+        if (eventInfo.inUse)
+        {
+            return new PacketEventInfo<Packet<?>>(name, source, cancellable, packetId);
+        }
+
+        eventInfo.reset(name, (Packet<?>)source, cancellable);
+        eventInfo.packetId = packetId;
+        eventInfo.inUse = true;
+        return eventInfo;
+    }
+
+    /**
+     * Release this EventInfo once the event has been handled, the cancellation
+     * state remains readable until the instance is next acquired
+     */
+    public void release()
+    {
+        if (this.reusable)
+        {
+            this.inUse = false;
+        }
     }
 
     public int getPacketId()
@@ -0,0 +1,284 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.common.transformers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.objectweb.asm.ClassReader;
+
+import com.mumfrey.liteloader.api.ContainerRegistry.DisabledReason;
+import com.mumfrey.liteloader.api.EnumerationObserver;
+import com.mumfrey.liteloader.core.ModInfo;
+import com.mumfrey.liteloader.core.runtime.Packets;
+import com.mumfrey.liteloader.interfaces.LoadableMod;
+import com.mumfrey.liteloader.interfaces.LoaderEnumerator;
+import com.mumfrey.liteloader.interfaces.TweakContainer;
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
+
+import net.minecraft.launchwrapper.Launch;
+
+/**
+ * Tracks which packets actually need a {@link PacketEvent} hook. Packets which
+ * LiteLoader handles internally are always hooked, other packets are only
+ * hooked if an enabled mod container asks for them, which it does by listing
+ * the packets it handles in the <tt>handledPackets</tt> metadata key. Since
+ * containers are enumerated before the packet transformer is created, the
+ * transformer can then skip all other packets entirely.
+ *
+ * <p>Containers which don't declare <tt>handledPackets</tt> are pre-scanned
+ * for classes which implement {@link com.mumfrey.liteloader.PacketHandler}
+ * and if one is found all packets are hooked, since we can't tell which
+ * packets the handler wants until it is instanced. Supertypes outside the
+ * container are read from the launch class loader, and if a supertype can't
+ * be read at all we assume it might be a PacketHandler.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+public class PacketHooks implements EnumerationObserver
+{
+    /**
+     * Set to true to hook every packet regardless of demand
+     */
+    private static final boolean HOOK_ALL = Boolean.parseBoolean(System.getProperty("liteloader.packets.hookAll", "false"));
+
+    private static final String METADATA_KEY = "handledPackets";
+
+    private static final String PACKET_HANDLER_REF = "com/mumfrey/liteloader/PacketHandler";
+
+    /**
+     * Types which can't be read from the container or the launch class loader
+     * but are known not to be packet handlers
+     */
+    private static final String[] KNOWN_TYPE_PREFIXES = { "java/", "javax/", "sun/", "com/mumfrey/liteloader/" };
+
+    /**
+     * Packets which PacketEvents handles internally
+     */
+    private static final Packets[] builtinPackets = {
+        Packets.SPacketLoginSuccess,
+        Packets.SPacketChat,
+        Packets.CPacketChatMessage,
+        Packets.SPacketJoinGame,
+        Packets.SPacketCustomPayload,
+        Packets.CPacketCustomPayload,
+        Packets.CPacketClientSettings
+    };
+
+    private static final BitSet hooked = new BitSet(Packets.count());
+
+    private static boolean hookAll = PacketHooks.HOOK_ALL;
+
+    static
+    {
+        for (Packets packet : PacketHooks.builtinPackets)
+        {
+            PacketHooks.hooked.set(packet.getIndex());
+        }
+    }
+
+    @Override
+    public void onRegisterEnabledContainer(LoaderEnumerator enumerator, LoadableMod<?> container)
+    {
+        if (PacketHooks.isHookingAll())
+        {
+            return;
+        }
+
+        String handledPackets = container.getMetaValue(PacketHooks.METADATA_KEY, null);
+        if (handledPackets != null)
+        {
+            for (String packetName : handledPackets.split(","))
+            {
+                packetName = packetName.trim();
+                if (packetName.length() > 0 && !PacketHooks.request(packetName))
+                {
+                    LiteLoaderLogger.warning("Mod with id %s requested a hook for unsupported packet class %s", container.getIdentifier(),
+                            packetName);
+                }
+            }
+
+            return;
+        }
+
+        if (PacketHooks.containsPacketHandler(container))
+        {
+            LiteLoaderLogger.info("Mod with id %s contains a PacketHandler but does not declare %s, all packets will be hooked",
+                    container.getIdentifier(), PacketHooks.METADATA_KEY);
+            PacketHooks.requestAll();
+        }
+    }
+
+    @Override
+    public void onRegisterDisabledContainer(LoaderEnumerator enumerator, LoadableMod<?> container, DisabledReason reason)
+    {
+    }
+
+    @Override
+    public void onRegisterTweakContainer(LoaderEnumerator enumerator, TweakContainer<File> container)
+    {
+    }
+
+    @Override
+    public void onModAdded(LoaderEnumerator enumerator, ModInfo<LoadableMod<?>> mod)
+    {
+    }
+
+    /**
+     * Request a hook for the specified packet
+     *
+     * @param packetName Packet class name, obfuscated name or short name
+     * @return false if the packet is not supported
+     */
+    public static synchronized boolean request(String packetName)
+    {
+        int packetId = Packets.indexOf(packetName);
+        if (packetId < 0)
+        {
+            return false;
+        }
+
+        PacketHooks.hooked.set(packetId);
+        return true;
+    }
+
+    /**
+     * Request hooks for all packets
+     */
+    public static synchronized void requestAll()
+    {
+        PacketHooks.hookAll = true;
+    }
+
+    public static synchronized boolean isHookingAll()
+    {
+        return PacketHooks.hookAll;
+    }
+
+    /**
+     * Get whether the specified packet is (or will be) hooked
+     */
+    public static synchronized boolean isHooked(int packetId)
+    {
+        return PacketHooks.hookAll || PacketHooks.hooked.get(packetId);
+    }
+
+    /**
+     * Read the headers of the classes in the container to determine whether
+     * any of them implement PacketHandler, this includes listeners which the
+     * mod registers itself later on. Classes are read directly from the
+     * container without being defined.
+     */
+    private static boolean containsPacketHandler(LoadableMod<?> container)
+    {
+        File file = container.toFile();
+        if (file == null || !file.exists())
+        {
+            return false;
+        }
+
+        URLClassLoader classLoader = null;
+        try
+        {
+            classLoader = new URLClassLoader(new URL[] { file.toURI().toURL() }, null);
+
+            // Types already visited are known not to be handlers, otherwise we would have returned
+            Set<String> visited = new HashSet<String>();
+            for (String className : container.getContainedClassNames())
+            {
+                if (PacketHooks.implementsPacketHandler(classLoader, className.replace('.', '/'), visited))
+                {
+                    return true;
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            LiteLoaderLogger.debug(ex);
+        }
+        finally
+        {
+            try
+            {
+                if (classLoader != null) classLoader.close();
+            }
+            catch (IOException ex) {}
+        }
+
+        return false;
+    }
+
+    /**
+     * Get whether the specified type implements PacketHandler, or might do
+     * because part of its hierarchy can't be read
+     */
+    private static boolean implementsPacketHandler(ClassLoader classLoader, String typeRef, Set<String> visited) throws IOException
+    {
+        if (typeRef == null || typeRef.startsWith("java/") || !visited.add(typeRef))
+        {
+            return false;
+        }
+
+        if (PacketHooks.PACKET_HANDLER_REF.equals(typeRef))
+        {
+            return true;
+        }
+
+        ClassReader classReader = PacketHooks.readClass(classLoader, typeRef);
+        if (classReader == null)
+        {
+            for (String prefix : PacketHooks.KNOWN_TYPE_PREFIXES)
+            {
+                if (typeRef.startsWith(prefix))
+                {
+                    return false;
+                }
+            }
+
+            LiteLoaderLogger.debug("Could not read supertype %s while scanning for packet handlers, assuming it is one", typeRef);
+            return true;
+        }
+
+        for (String interfaceName : classReader.getInterfaces())
+        {
+            if (PacketHooks.implementsPacketHandler(classLoader, interfaceName, visited))
+            {
+                return true;
+            }
+        }
+
+        return PacketHooks.implementsPacketHandler(classLoader, classReader.getSuperName(), visited);
+    }
+
+    /**
+     * Read the specified class from the container, or from the launch class
+     * loader if it is not in the container (eg. it is in a library or API jar)
+     */
+    private static ClassReader readClass(ClassLoader classLoader, String typeRef) throws IOException
+    {
+        InputStream stream = classLoader.getResourceAsStream(typeRef + ".class");
+        if (stream != null)
+        {
+            try
+            {
+                return new ClassReader(stream);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+
+        byte[] bytes = Launch.classLoader.getClassBytes(typeRef.replace('/', '.'));
+        return bytes != null ? new ClassReader(bytes) : null;
+    }
+}
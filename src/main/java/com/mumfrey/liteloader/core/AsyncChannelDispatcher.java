@@ -0,0 +1,179 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.mumfrey.liteloader.ServerPluginChannelListener;
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Dispatches plugin channel messages to thread-safe listeners on a fixed set
+ * of worker threads. Each message is assigned to a worker by hashing the
+ * sender and the channel, and each worker drains its own queue in order, so
+ * messages from one player on one channel are always delivered in FIFO order
+ * without any per-player bookkeeping.
+ *
+ * <p>Worker queues are bounded. When a queue is full the server thread waits
+ * briefly for space, then drops the message and counts it as a fault against
+ * the listener, so a slow listener can't stall the server indefinitely or
+ * queue unbounded amounts of data.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+final class AsyncChannelDispatcher
+{
+    /**
+     * Set to false to dispatch all messages on the server thread
+     */
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("liteloader.channels.async", "true"));
+
+    private static final int THREADS = Math.max(1, Integer.getInteger("liteloader.channels.async.threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors())).intValue());
+
+    /**
+     * Capacity of each worker queue
+     */
+    private static final int QUEUE_SIZE = Math.max(1, Integer.getInteger("liteloader.channels.async.queue", 1024).intValue());
+
+    /**
+     * Time the server thread waits for space in a full queue before dropping
+     * the message
+     */
+    private static final long OFFER_TIMEOUT_MS = 5L;
+
+    /**
+     * Queued message
+     */
+    static final class Message
+    {
+        final ServerPluginChannelListener listener;
+        final EntityPlayerMP sender;
+        final String channel;
+        final PacketBuffer data;
+
+        Message(ServerPluginChannelListener listener, EntityPlayerMP sender, String channel, PacketBuffer data)
+        {
+            this.listener = listener;
+            this.sender = sender;
+            this.channel = channel;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Worker thread with its own queue
+     */
+    final class Worker extends Thread
+    {
+        final BlockingQueue<Message> queue = new ArrayBlockingQueue<Message>(AsyncChannelDispatcher.QUEUE_SIZE);
+
+        Worker(int index)
+        {
+            super("LiteLoader Channel Worker #" + index);
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                Message message;
+                try
+                {
+                    message = this.queue.take();
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+
+                try
+                {
+                    AsyncChannelDispatcher.this.channels.dispatchCustomPayload(message.listener, message.sender, message.channel, message.data);
+                }
+                catch (Throwable th)
+                {
+                    // Keep the worker alive, otherwise its queue would never be drained again
+                    LiteLoaderLogger.warning(th, "Error dispatching plugin channel message on channel %s to %s", message.channel,
+                            message.listener.getName());
+                }
+            }
+        }
+    }
+
+    private final ServerPluginChannels channels;
+
+    /**
+     * Workers, created on first use
+     */
+    private volatile Worker[] workers;
+
+    AsyncChannelDispatcher(ServerPluginChannels channels)
+    {
+        this.channels = channels;
+    }
+
+    /**
+     * Queue a message for the specified listener
+     *
+     * @return false if the message was dropped because the listener's queue is
+     *      full
+     */
+    boolean dispatch(ServerPluginChannelListener listener, EntityPlayerMP sender, String channel, PacketBuffer data)
+    {
+        Worker worker = this.getWorker(sender, channel);
+        try
+        {
+            if (worker.queue.offer(new Message(listener, sender, channel, data), AsyncChannelDispatcher.OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+            {
+                return true;
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+    }
+
+    private Worker getWorker(EntityPlayerMP sender, String channel)
+    {
+        Worker[] workers = this.getWorkers();
+        int hash = 31 * sender.getUniqueID().hashCode() + channel.hashCode();
+        return workers[(hash & Integer.MAX_VALUE) % workers.length];
+    }
+
+    private Worker[] getWorkers()
+    {
+        Worker[] workers = this.workers;
+        return workers != null ? workers : this.startWorkers();
+    }
+
+    private synchronized Worker[] startWorkers()
+    {
+        if (this.workers == null)
+        {
+            LiteLoaderLogger.info("Starting %d plugin channel worker threads", AsyncChannelDispatcher.THREADS);
+            Worker[] workers = new Worker[AsyncChannelDispatcher.THREADS];
+            for (int index = 0; index < workers.length; index++)
+            {
+                workers[index] = new Worker(index);
+                workers[index].start();
+            }
+            this.workers = workers;
+        }
+
+        return this.workers;
+    }
+}
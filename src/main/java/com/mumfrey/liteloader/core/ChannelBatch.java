@@ -0,0 +1,134 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Multiplexed payload carrying several plugin channel messages in a single
+ * custom payload packet on the {@link PluginChannels#CHANNEL_BATCH} channel.
+ * Each frame is the channel name as a length-prefixed string followed by the
+ * VarInt length of the message and the message itself.
+ *
+ * <p>Batches are only sent to remote hosts which registered the batch
+ * channel, so hosts without LiteLoader (or with an older version) always
+ * receive plain messages.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+final class ChannelBatch
+{
+    /**
+     * Set to false to always send queued messages individually
+     */
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("liteloader.channels.batch", "true"));
+
+    /**
+     * Callback for frames read from a batch
+     */
+    interface FrameHandler
+    {
+        public abstract void onFrame(String channel, PacketBuffer data);
+    }
+
+    /**
+     * Maximum payload size for the direction this batch is sent in
+     */
+    private final int maxSize;
+
+    private PacketBuffer buffer;
+
+    private int frames;
+
+    /**
+     * @param maxSize Maximum size of the custom payload in the direction this
+     *      batch is sent in
+     */
+    ChannelBatch(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get whether a message of the specified length could be batched at all,
+     * messages which are too large have to be sent individually
+     */
+    boolean canBatch(String channel, int length)
+    {
+        return ChannelBatch.getFrameSize(channel, length) <= this.maxSize;
+    }
+
+    /**
+     * Get whether a message of the specified length fits in this batch
+     */
+    boolean fits(String channel, int length)
+    {
+        int size = this.buffer != null ? this.buffer.writerIndex() : 0;
+        return size + ChannelBatch.getFrameSize(channel, length) <= this.maxSize;
+    }
+
+    boolean isEmpty()
+    {
+        return this.frames == 0;
+    }
+
+    /**
+     * Append a message to this batch, the message's readable bytes are copied
+     * and its reader index is left unchanged. The message is recorded in the
+     * network metrics against its own channel, the batch itself is not.
+     */
+    void add(String channel, PacketBuffer data)
+    {
+        if (this.buffer == null)
+        {
+            this.buffer = new PacketBuffer(Unpooled.buffer());
+        }
+
+        int length = data.readableBytes();
+        this.buffer.writeString(channel);
+        this.buffer.writeVarInt(length);
+        this.buffer.writeBytes(data, data.readerIndex(), length);
+        this.frames++;
+
+        if (NetworkMetrics.ENABLED)
+        {
+            NetworkMetrics.onChannelMessageSent(channel, length);
+        }
+    }
+
+    /**
+     * Take the encoded batch and reset this batch
+     */
+    PacketBuffer drain()
+    {
+        PacketBuffer buffer = this.buffer;
+        this.buffer = null;
+        this.frames = 0;
+        return buffer;
+    }
+
+    /**
+     * Read all frames from a received batch, frames are passed to the handler
+     * in the order they were queued by the sender
+     */
+    static void read(PacketBuffer data, FrameHandler handler)
+    {
+        while (data.isReadable())
+        {
+            String channel = data.readString(PluginChannels.MAX_CHANNEL_NAME_LENGTH);
+            int length = data.readVarInt();
+            PacketBuffer frame = new PacketBuffer(data.readSlice(length));
+            handler.onFrame(channel, frame);
+        }
+    }
+
+    private static int getFrameSize(String channel, int length)
+    {
+        // Worst case for the string and VarInt prefixes, channel names are short so this barely matters
+        return 5 + channel.length() * 3 + 5 + length;
+    }
+}
@@ -8,6 +8,7 @@ package com.mumfrey.liteloader.core;
 import com.mumfrey.liteloader.PluginChannelListener;
 import com.mumfrey.liteloader.api.Listener;
 import com.mumfrey.liteloader.core.event.HandlerList;
+import com.mumfrey.liteloader.core.exceptions.UnregisteredChannelException;
 import com.mumfrey.liteloader.interfaces.FastIterableDeque;
 import com.mumfrey.liteloader.permissions.PermissionsManagerClient;
 import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
@@ -25,6 +26,16 @@ public abstract class ClientPluginChannels extends PluginChannels<PluginChannelL
 {
     private static ClientPluginChannels instance;
 
+    /**
+     * Maximum size of a client to server custom payload
+     */
+    private static final int MAX_PAYLOAD_SIZE = 32767;
+
+    /**
+     * Messages queued during the current tick
+     */
+    private final ChannelBatch batch = new ChannelBatch(ClientPluginChannels.MAX_PAYLOAD_SIZE);
+
     protected ClientPluginChannels()
     {
         if (ClientPluginChannels.instance != null) throw new RuntimeException("Plugin Channels Startup Error",
@@ -76,6 +87,17 @@ public abstract class ClientPluginChannels extends PluginChannels<PluginChannelL
         super.addPluginChannelListener(pluginChannelListener);
     }
 
+    /* (non-Javadoc)
+     * @see com.mumfrey.liteloader.core.PluginChannels
+     *      #clearPluginChannels(net.minecraft.network.INetHandler)
+     */
+    @Override
+    protected void clearPluginChannels(INetHandler netHandler)
+    {
+        super.clearPluginChannels(netHandler);
+        this.batch.drain();
+    }
+
     /**
      * Callback for the plugin channel hook
      * 
@@ -93,6 +115,10 @@ public abstract class ClientPluginChannels extends PluginChannels<PluginChannelL
         {
             this.onRegisterPacketReceived(data);
         }
+        else if (PluginChannels.CHANNEL_BATCH.equals(channel))
+        {
+            this.onBatchReceived(data);
+        }
         else if (this.pluginChannels.containsKey(channel))
         {
             try
@@ -109,20 +135,53 @@ public abstract class ClientPluginChannels extends PluginChannels<PluginChannelL
         }
     }
 
+    /**
+     * @param data
+     */
+    private void onBatchReceived(PacketBuffer data)
+    {
+        try
+        {
+            ChannelBatch.read(data, new ChannelBatch.FrameHandler()
+            {
+                @Override
+                public void onFrame(String channel, PacketBuffer frame)
+                {
+                    if (PluginChannels.isValidChannelName(channel) && !PluginChannels.CHANNEL_BATCH.equals(channel))
+                    {
+                        ClientPluginChannels.this.onPluginChannelMessage(channel, frame);
+                    }
+                }
+            });
+        }
+        catch (Exception ex)
+        {
+            LiteLoaderLogger.warning(ex, "Error decoding batched plugin channel messages from server %s", ex.getClass().getSimpleName());
+        }
+    }
+
     /**
      * @param channel
      * @param data
      */
     protected void onModPacketReceived(String channel, PacketBuffer data)
     {
+        if (NetworkMetrics.ENABLED)
+        {
+            NetworkMetrics.onChannelMessageReceived(channel, data.readableBytes());
+        }
+
         for (PluginChannelListener pluginChannelListener : this.pluginChannels.get(channel))
         {
+            long start = NetworkMetrics.ENABLED ? System.nanoTime() : 0L;
             try
             {
                 pluginChannelListener.onCustomPayload(channel, data);
             }
             catch (Exception ex)
             {
+                if (NetworkMetrics.ENABLED) NetworkMetrics.onChannelFault(channel);
+
                 int failCount = 1;
                 if (this.faultingPluginChannelListeners.containsKey(pluginChannelListener))
                 {
@@ -140,6 +199,27 @@ public abstract class ClientPluginChannels extends PluginChannels<PluginChannelL
                     this.faultingPluginChannelListeners.put(pluginChannelListener, Integer.valueOf(failCount));
                 }
             }
+
+            if (NetworkMetrics.ENABLED)
+            {
+                NetworkMetrics.onChannelListenerTime(channel, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Record an outbound message in the network metrics
+     * 
+     * @param channel
+     * @param length message length, read before the packet is sent because
+     *      sending consumes the buffer
+     */
+    protected static void onMessageSent(String channel, int length)
+    {
+        // Batched messages are recorded against their own channels when they are queued
+        if (NetworkMetrics.ENABLED && !PluginChannels.CHANNEL_BATCH.equals(channel))
+        {
+            NetworkMetrics.onChannelMessageSent(channel, length);
         }
     }
 
@@ -190,6 +270,73 @@ public abstract class ClientPluginChannels extends PluginChannels<PluginChannelL
         return false;
     }
 
+    /**
+     * Queue a message to the server on a plugin channel. Messages queued
+     * during a tick are sent together in a single packet at the end of the
+     * tick if the server supports batching, otherwise the message is sent
+     * immediately. Queued messages are delivered in the order they were
+     * queued, but not necessarily in order with messages sent using
+     * {@link #sendMessage}.
+     * 
+     * @param channel Channel to send, must not be a reserved channel name
+     * @param data Message data, the data is copied so the buffer can be
+     *      reused once this method returns
+     */
+    public static boolean queueMessage(String channel, PacketBuffer data, ChannelPolicy policy)
+    {
+        if (ClientPluginChannels.instance != null)
+        {
+            return ClientPluginChannels.instance.queue(channel, data, policy);
+        }
+
+        return false;
+    }
+
+    /**
+     * @param channel
+     * @param data
+     * @param policy
+     */
+    protected synchronized boolean queue(String channel, PacketBuffer data, ChannelPolicy policy)
+    {
+        int length = data.readableBytes();
+        if (!ChannelBatch.ENABLED || !this.isRemoteChannelRegistered(PluginChannels.CHANNEL_BATCH) || !this.batch.canBatch(channel, length))
+        {
+            this.flushQueuedMessages();
+            return this.send(channel, data, policy);
+        }
+
+        if (!PluginChannels.isValidChannelName(channel))
+        {
+            throw new RuntimeException("Invalid channel name specified"); 
+        }
+
+        if (!policy.allows(this, channel))
+        {
+            if (policy.isSilent()) return false;
+            throw new UnregisteredChannelException(channel);
+        }
+
+        if (!this.batch.fits(channel, length))
+        {
+            this.flushQueuedMessages();
+        }
+
+        this.batch.add(channel, data);
+        return true;
+    }
+
+    /**
+     * Send any messages queued during this tick
+     */
+    protected synchronized void flushQueuedMessages()
+    {
+        if (!this.batch.isEmpty())
+        {
+            this.send(PluginChannels.CHANNEL_BATCH, this.batch.drain(), ChannelPolicy.DISPATCH_ALWAYS);
+        }
+    }
+
     /**
      * Send a message to the server on a plugin channel
      * 
@@ -49,6 +49,7 @@ import com.mumfrey.liteloader.modconfig.ConfigManager;
 import com.mumfrey.liteloader.modconfig.Exposable;
 import com.mumfrey.liteloader.permissions.PermissionsManagerClient;
 import com.mumfrey.liteloader.permissions.PermissionsManagerServer;
+import com.mumfrey.liteloader.transformers.ClassTransformer;
 import com.mumfrey.liteloader.transformers.event.EventTransformer;
 import com.mumfrey.liteloader.util.Input;
 import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
@@ -550,6 +551,9 @@ public final class LiteLoader
         if (LiteLoaderLogger.DEBUG)
         {
             EventTransformer.dumpInjectionState();
+            ClassTransformer.dumpTimings();
+            NetworkMetrics.dump();
+            MessageBus.getInstance().dumpStats();
             MixinEnvironment.getCurrentEnvironment().audit();
             LiteLoaderLogger.info("Debug info dumped to console");
         }
@@ -962,6 +966,10 @@ public final class LiteLoader
      */
     void onTick(boolean clock, float partialTicks, boolean inGame)
     {
+        this.profiler.startSection("messagebus");
+        MessageBus.getInstance().onTick();
+        this.profiler.endSection();
+
         if (clock)
         {
             // Tick the permissions manager
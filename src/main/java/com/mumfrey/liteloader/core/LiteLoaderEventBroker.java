@@ -5,12 +5,11 @@
  */
 package com.mumfrey.liteloader.core;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
 
 import com.mojang.authlib.GameProfile;
+import com.mumfrey.liteloader.FilteredPlayerMoveListener;
 import com.mumfrey.liteloader.LiteMod;
 import com.mumfrey.liteloader.PlayerInteractionListener;
 import com.mumfrey.liteloader.PlayerInteractionListener.MouseButton;
@@ -31,7 +30,6 @@ import com.mumfrey.liteloader.common.ducks.ITeleportHandler;
 import com.mumfrey.liteloader.core.event.HandlerList;
 import com.mumfrey.liteloader.core.event.HandlerList.ReturnLogicOp;
 import com.mumfrey.liteloader.interfaces.FastIterable;
-import com.mumfrey.liteloader.interfaces.FastIterableDeque;
 import com.mumfrey.liteloader.launch.LoaderProperties;
 import com.mumfrey.liteloader.util.Position;
 import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
@@ -54,6 +52,7 @@ import net.minecraft.server.management.PlayerList;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.EnumHand;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.RayTraceResult.Type;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
@@ -115,6 +114,78 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
         DIG_BLOCK_END
     }
 
+    /**
+     * Thresholds for a filtered move listener, read when the listener is
+     * registered
+     * 
+     * @author Adam Mummery-Smith
+     */
+    static final class MoveFilter
+    {
+        final FilteredPlayerMoveListener listener;
+
+        private final double moveThresholdSq;
+
+        private final float lookThreshold;
+
+        private final boolean blockChangeOnly;
+
+        MoveFilter(FilteredPlayerMoveListener listener)
+        {
+            double moveThreshold = listener.getMoveThreshold();
+            this.listener = listener;
+            this.moveThresholdSq = moveThreshold < 0.0 ? -1.0 : moveThreshold * moveThreshold;
+            this.lookThreshold = listener.getLookThreshold();
+            this.blockChangeOnly = listener.isBlockChangeOnly();
+        }
+
+        /**
+         * Get whether a move to the specified position from the anchor at the
+         * specified offset is meaningful to this listener
+         */
+        boolean accepts(double[] anchors, int anchor, double x, double y, double z, float yaw, float pitch)
+        {
+            if (this.blockChangeOnly)
+            {
+                return MathHelper.floor(x) != MathHelper.floor(anchors[anchor])
+                        || MathHelper.floor(y) != MathHelper.floor(anchors[anchor + 1])
+                        || MathHelper.floor(z) != MathHelper.floor(anchors[anchor + 2]);
+            }
+
+            if (this.moveThresholdSq >= 0.0)
+            {
+                double dx = x - anchors[anchor], dy = y - anchors[anchor + 1], dz = z - anchors[anchor + 2];
+                double distanceSq = dx * dx + dy * dy + dz * dz;
+                if (distanceSq > 0.0 && distanceSq >= this.moveThresholdSq)
+                {
+                    return true;
+                }
+            }
+
+            if (this.lookThreshold >= 0.0F)
+            {
+                double deltaYaw = Math.abs(MathHelper.wrapDegrees(yaw - anchors[anchor + 3]));
+                double deltaPitch = Math.abs(pitch - anchors[anchor + 4]);
+                double delta = Math.max(deltaYaw, deltaPitch);
+                if (delta > 0.0 && delta >= this.lookThreshold)
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        static void setAnchor(double[] anchors, int anchor, double x, double y, double z, float yaw, float pitch)
+        {
+            anchors[anchor] = x;
+            anchors[anchor + 1] = y;
+            anchors[anchor + 2] = z;
+            anchors[anchor + 3] = yaw;
+            anchors[anchor + 4] = pitch;
+        }
+    }
+
     /**
      * Singleton
      */
@@ -137,8 +208,10 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
 
     protected LiteLoaderMods mods;
 
-    private Map<UUID, PlayerEventState> playerStates = new HashMap<UUID, PlayerEventState>();
-    private FastIterableDeque<IEventState> playerStateList = new HandlerList<IEventState>(IEventState.class);
+    /**
+     * Per-player event states, these churn too quickly to live in a HandlerList
+     */
+    private final PlayerEventStateRegistry playerStates = new PlayerEventStateRegistry(this);
 
     /**
      * List of mods which provide server commands
@@ -164,6 +237,17 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
     private FastIterable<PlayerMoveListener> playerMoveListeners
             = new HandlerList<PlayerMoveListener>(PlayerMoveListener.class, ReturnLogicOp.AND_BREAK_ON_FALSE);
 
+    /**
+     * True once an unfiltered move listener has been added, the move hook
+     * returns immediately if there are no listeners at all
+     */
+    private boolean hasPlayerMoveListeners;
+
+    /**
+     * Move listeners which declare thresholds, in registration order
+     */
+    private MoveFilter[] moveFilters = new MoveFilter[0];
+
     /**
      * List of mods which monitor server ticks
      */
@@ -288,7 +372,16 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
      */
     public void addPlayerMoveListener(PlayerMoveListener playerMoveListener)
     {
+        if (playerMoveListener instanceof FilteredPlayerMoveListener)
+        {
+            MoveFilter[] moveFilters = Arrays.copyOf(this.moveFilters, this.moveFilters.length + 1);
+            moveFilters[this.moveFilters.length] = new MoveFilter((FilteredPlayerMoveListener)playerMoveListener);
+            this.moveFilters = moveFilters;
+            return;
+        }
+
         this.playerMoveListeners.add(playerMoveListener);
+        this.hasPlayerMoveListeners = true;
     }
 
     /**
@@ -323,7 +416,7 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
             this.serverCommandProviders.all().provideCommands(serverCommandManager);
         }
 
-        LiteLoader.getServerPluginChannels().onServerStartup();
+        LiteLoader.getServerPluginChannels().onServerStartup(instance);
 
         this.playerStates.clear();
     }
@@ -378,6 +471,7 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
     public void onPlayerLogout(PlayerList scm, EntityPlayerMP player)
     {
         this.serverPlayerListeners.all().onPlayerLogout(player);
+        LiteLoader.getServerPluginChannels().onPlayerLeft(player);
         this.removePlayer(player);
     }
 
@@ -408,10 +502,15 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
 
     public void onServerTick(MinecraftServer server)
     {
-        this.playerStateList.all().onTick(server);
+        this.playerStates.onTick(server);
         this.serverTickListeners.all().onTick(server);
     }
 
+    public void onServerTickEnd(MinecraftServer server)
+    {
+        LiteLoader.getServerPluginChannels().onServerTickEnd();
+    }
+
     public boolean onPlaceBlock(NetHandlerPlayServer netHandler, EntityPlayerMP player, EnumHand hand, BlockPos pos, EnumFacing facing)
     {
         if (!this.onPlayerInteract(InteractType.PLACE_BLOCK_MAYBE, player, hand, player.getHeldItem(hand), pos, facing))
@@ -489,24 +588,97 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
 
     public boolean onPlayerMove(NetHandlerPlayServer netHandler, CPacketPlayer packet, EntityPlayerMP player, WorldServer world)
     {
-        Position from = new Position(player, true);
-        Position to = new Position(packet.getX(player.posX), packet.getY(player.posY), packet.getZ(player.posZ),
-                packet.getYaw(player.rotationYaw), packet.getPitch(player.rotationPitch));
-        
-        ReturnValue<Position> pos = new ReturnValue<Position>(to);
+        MoveFilter[] moveFilters = this.moveFilters;
+        if (!this.hasPlayerMoveListeners && moveFilters.length == 0)
+        {
+            return true;
+        }
 
-        if (!this.playerMoveListeners.all().onPlayerMove(player, from, to, pos))
+        double toX = packet.getX(player.posX), toY = packet.getY(player.posY), toZ = packet.getZ(player.posZ);
+        float toYaw = packet.getYaw(player.rotationYaw), toPitch = packet.getPitch(player.rotationPitch);
+
+        // Positions are only allocated once we know at least one listener will be called
+        Position from = null, to = null;
+        ReturnValue<Position> pos = null;
+
+        if (this.hasPlayerMoveListeners)
         {
-            int teleportId = ((ITeleportHandler)player.connection).beginTeleport(from);
-            player.setPositionAndRotation(from.x, from.y, from.z, player.prevRotationYaw, player.prevRotationPitch);
-            player.connection.sendPacket(new SPacketPlayerPosLook(from.x, from.y, from.z,
-                    player.prevRotationYaw, player.prevRotationPitch, Collections.<EnumFlags>emptySet(), teleportId));
-            return false;
+            from = new Position(player, true);
+            to = new Position(toX, toY, toZ, toYaw, toPitch);
+            pos = new ReturnValue<Position>(to);
+
+            if (!this.playerMoveListeners.all().onPlayerMove(player, from, to, pos))
+            {
+                this.cancelPlayerMove(player, from);
+                return false;
+            }
         }
-        
-        if (pos.isSet())
+
+        double[] anchors = null;
+        boolean[] notified = null;
+
+        if (moveFilters.length > 0)
+        {
+            anchors = this.getPlayerState(player).getMoveAnchors(moveFilters.length);
+            for (int index = 0; index < moveFilters.length; index++)
+            {
+                int anchor = index * 5;
+                if (Double.isNaN(anchors[anchor]))
+                {
+                    MoveFilter.setAnchor(anchors, anchor, player.prevPosX, player.prevPosY, player.prevPosZ, player.prevRotationYaw,
+                            player.prevRotationPitch);
+                }
+
+                if (!moveFilters[index].accepts(anchors, anchor, toX, toY, toZ, toYaw, toPitch))
+                {
+                    continue;
+                }
+
+                if (from == null)
+                {
+                    from = new Position(player, true);
+                    to = new Position(toX, toY, toZ, toYaw, toPitch);
+                    pos = new ReturnValue<Position>(to);
+                }
+
+                if (notified == null)
+                {
+                    notified = new boolean[moveFilters.length];
+                }
+
+                notified[index] = true;
+
+                if (!moveFilters[index].listener.onPlayerMove(player, from, to, pos))
+                {
+                    // The player is sent back to where they came from, so measure the next move from there
+                    for (int reset = 0; reset < moveFilters.length; reset++)
+                    {
+                        MoveFilter.setAnchor(anchors, reset * 5, from.x, from.y, from.z, from.yaw, from.pitch);
+                    }
+
+                    this.cancelPlayerMove(player, from);
+                    return false;
+                }
+            }
+        }
+
+        Position newPos = pos != null && pos.isSet() ? pos.get() : null;
+
+        // Only move the anchors once every listener has allowed the move
+        if (notified != null)
+        {
+            Position anchorPos = newPos != null ? newPos : to;
+            for (int index = 0; index < moveFilters.length; index++)
+            {
+                if (notified[index])
+                {
+                    MoveFilter.setAnchor(anchors, index * 5, anchorPos.x, anchorPos.y, anchorPos.z, anchorPos.yaw, anchorPos.pitch);
+                }
+            }
+        }
+
+        if (newPos != null)
         {
-            Position newPos = pos.get();
             netHandler.setPlayerLocation(newPos.x, newPos.y, newPos.z, newPos.yaw, newPos.pitch);
             return false;
         }
@@ -514,6 +686,14 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
         return true;
     }
 
+    private void cancelPlayerMove(EntityPlayerMP player, Position from)
+    {
+        int teleportId = ((ITeleportHandler)player.connection).beginTeleport(from);
+        player.setPositionAndRotation(from.x, from.y, from.z, player.prevRotationYaw, player.prevRotationPitch);
+        player.connection.sendPacket(new SPacketPlayerPosLook(from.x, from.y, from.z,
+                player.prevRotationYaw, player.prevRotationPitch, Collections.<EnumFlags>emptySet(), teleportId));
+    }
+
     void onPlayerSettingsReceived(EntityPlayerMP player, CPacketClientSettings packet)
     {
         PlayerEventState playerState = this.getPlayerState(player);
@@ -523,23 +703,12 @@ public abstract class LiteLoaderEventBroker<TClient, TServer extends MinecraftSe
 
     public PlayerEventState getPlayerState(EntityPlayerMP player)
     {
-        PlayerEventState playerState = this.playerStates.get(player.getUniqueID());
-        if (playerState == null)
-        {
-            playerState = new PlayerEventState(player, this);
-            this.playerStates.put(player.getUniqueID(), playerState);
-            this.playerStateList.add(playerState);
-        }
-        return playerState;
+        return this.playerStates.get(player);
     }
 
     protected void removePlayer(EntityPlayerMP player)
     {
-        PlayerEventState playerState = this.playerStates.remove(player.getUniqueID());
-        if (playerState != null)
-        {
-            this.playerStateList.remove(playerState);
-        }
+        this.playerStates.remove(player);
     }
 
     @Override
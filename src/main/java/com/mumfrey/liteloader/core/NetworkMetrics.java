@@ -0,0 +1,546 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.mumfrey.liteloader.core.runtime.Packets;
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
+
+/**
+ * Counters and handler timings for hooked packets and plugin channels, used
+ * to find out which packet handlers and channel listeners are costing tick
+ * time. Counters are striped ({@link LongAdder}) so recording from the
+ * network and server threads never contends on a single cache line.
+ *
+ * <p>Metrics are only collected when <tt>liteloader.metrics</tt> is set, in
+ * which case they can be read through this class, are included in the debug
+ * dump, and are logged every <tt>liteloader.metrics.interval</tt> seconds if
+ * an interval is specified. If <tt>liteloader.metrics.file</tt> is also set,
+ * the periodic report writes a JSON snapshot to that file as well.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class NetworkMetrics
+{
+    /**
+     * Set to true to collect metrics
+     */
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("liteloader.metrics", "false"));
+
+    /**
+     * Interval in seconds between periodic reports, 0 to disable
+     */
+    private static final int REPORT_INTERVAL = Integer.getInteger("liteloader.metrics.interval", 0).intValue();
+
+    /**
+     * File to write periodic JSON snapshots to, null to only log
+     */
+    private static final String REPORT_FILE = System.getProperty("liteloader.metrics.file");
+
+    /**
+     * Number of entries to include in the log report for each category
+     */
+    private static final int REPORT_TOP = 10;
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Histogram of handler times with power-of-two nanosecond buckets
+     */
+    public static final class LatencyHistogram
+    {
+        private static final int BUCKETS = 40;
+
+        private final LongAdder[] buckets = new LongAdder[LatencyHistogram.BUCKETS];
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(new LongBinaryOperator()
+        {
+            @Override
+            public long applyAsLong(long left, long right)
+            {
+                return Math.max(left, right);
+            }
+        }, 0L);
+
+        LatencyHistogram()
+        {
+            for (int bucket = 0; bucket < this.buckets.length; bucket++)
+            {
+                this.buckets[bucket] = new LongAdder();
+            }
+        }
+
+        void record(long nanos)
+        {
+            if (nanos < 0L) nanos = 0L;
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(nanos), LatencyHistogram.BUCKETS - 1);
+            this.buckets[bucket].increment();
+            this.totalNanos.add(nanos);
+            this.maxNanos.accumulate(nanos);
+        }
+
+        public long getCount()
+        {
+            long count = 0L;
+            for (LongAdder bucket : this.buckets)
+            {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public long getTotalNanos()
+        {
+            return this.totalNanos.sum();
+        }
+
+        public long getMaxNanos()
+        {
+            return this.maxNanos.get();
+        }
+
+        /**
+         * Get the upper bound of the bucket containing the specified
+         * percentile, accurate to within a factor of two
+         *
+         * @param percentile Percentile between 0 and 100
+         */
+        public long getPercentileNanos(double percentile)
+        {
+            long[] counts = new long[this.buckets.length];
+            long count = 0L;
+            for (int bucket = 0; bucket < counts.length; bucket++)
+            {
+                counts[bucket] = this.buckets[bucket].sum();
+                count += counts[bucket];
+            }
+
+            long target = (long)Math.ceil(count * percentile / 100.0);
+            long seen = 0L;
+            for (int bucket = 0; bucket < counts.length; bucket++)
+            {
+                seen += counts[bucket];
+                if (seen >= target && seen > 0L)
+                {
+                    return bucket == 0 ? 0L : (1L << bucket) - 1L;
+                }
+            }
+
+            return 0L;
+        }
+
+        JsonObject toJson()
+        {
+            JsonObject json = new JsonObject();
+            json.addProperty("count", this.getCount());
+            json.addProperty("totalNanos", this.getTotalNanos());
+            json.addProperty("maxNanos", this.getMaxNanos());
+            json.addProperty("p50Nanos", this.getPercentileNanos(50.0));
+            json.addProperty("p99Nanos", this.getPercentileNanos(99.0));
+            return json;
+        }
+    }
+
+    /**
+     * Metrics for a single packet type
+     */
+    public static final class PacketStats
+    {
+        private final Packets packet;
+
+        final LongAdder hooked = new LongAdder();
+
+        final LongAdder cancelled = new LongAdder();
+
+        final LatencyHistogram handlerTime = new LatencyHistogram();
+
+        PacketStats(Packets packet)
+        {
+            this.packet = packet;
+        }
+
+        public Packets getPacket()
+        {
+            return this.packet;
+        }
+
+        /**
+         * Number of packets which passed through the hook
+         */
+        public long getHookedCount()
+        {
+            return this.hooked.sum();
+        }
+
+        /**
+         * Number of packets which were cancelled by a handler
+         */
+        public long getCancelledCount()
+        {
+            return this.cancelled.sum();
+        }
+
+        /**
+         * Time spent in mod packet handlers
+         */
+        public LatencyHistogram getHandlerTime()
+        {
+            return this.handlerTime;
+        }
+
+        JsonObject toJson()
+        {
+            JsonObject json = new JsonObject();
+            json.addProperty("packet", this.packet.getShortName());
+            json.addProperty("hooked", this.getHookedCount());
+            json.addProperty("cancelled", this.getCancelledCount());
+            json.add("handlerTime", this.handlerTime.toJson());
+            return json;
+        }
+    }
+
+    /**
+     * Metrics for a single plugin channel
+     */
+    public static final class ChannelStats
+    {
+        private final String channel;
+
+        final LongAdder messagesIn = new LongAdder();
+
+        final LongAdder bytesIn = new LongAdder();
+
+        final LongAdder messagesOut = new LongAdder();
+
+        final LongAdder bytesOut = new LongAdder();
+
+        final LongAdder faults = new LongAdder();
+
+        final LatencyHistogram listenerTime = new LatencyHistogram();
+
+        ChannelStats(String channel)
+        {
+            this.channel = channel;
+        }
+
+        public String getChannel()
+        {
+            return this.channel;
+        }
+
+        public long getMessagesIn()
+        {
+            return this.messagesIn.sum();
+        }
+
+        public long getBytesIn()
+        {
+            return this.bytesIn.sum();
+        }
+
+        public long getMessagesOut()
+        {
+            return this.messagesOut.sum();
+        }
+
+        public long getBytesOut()
+        {
+            return this.bytesOut.sum();
+        }
+
+        /**
+         * Number of exceptions thrown by listeners on this channel
+         */
+        public long getFaults()
+        {
+            return this.faults.sum();
+        }
+
+        /**
+         * Time spent in listeners for this channel
+         */
+        public LatencyHistogram getListenerTime()
+        {
+            return this.listenerTime;
+        }
+
+        JsonObject toJson()
+        {
+            JsonObject json = new JsonObject();
+            json.addProperty("channel", this.channel);
+            json.addProperty("messagesIn", this.getMessagesIn());
+            json.addProperty("bytesIn", this.getBytesIn());
+            json.addProperty("messagesOut", this.getMessagesOut());
+            json.addProperty("bytesOut", this.getBytesOut());
+            json.addProperty("faults", this.getFaults());
+            json.add("listenerTime", this.listenerTime.toJson());
+            return json;
+        }
+    }
+
+    private static final PacketStats[] packetStats = new PacketStats[Packets.count()];
+
+    private static final ConcurrentMap<String, ChannelStats> channelStats = new ConcurrentHashMap<String, ChannelStats>();
+
+    private static ScheduledExecutorService reporter;
+
+    static
+    {
+        for (int packetId = 0; packetId < NetworkMetrics.packetStats.length; packetId++)
+        {
+            NetworkMetrics.packetStats[packetId] = new PacketStats(Packets.packets[packetId]);
+        }
+
+        if (NetworkMetrics.ENABLED && NetworkMetrics.REPORT_INTERVAL > 0)
+        {
+            NetworkMetrics.startReporter();
+        }
+    }
+
+    private NetworkMetrics()
+    {
+    }
+
+    /**
+     * Get the metrics for the specified packet
+     */
+    public static PacketStats getPacketStats(Packets packet)
+    {
+        return NetworkMetrics.packetStats[packet.getIndex()];
+    }
+
+    /**
+     * Get the metrics for the specified channel, null if no traffic has been
+     * recorded on the channel
+     */
+    public static ChannelStats getChannelStats(String channel)
+    {
+        return NetworkMetrics.channelStats.get(channel);
+    }
+
+    /**
+     * Get the channels which have recorded traffic
+     */
+    public static Set<String> getChannels()
+    {
+        return Collections.unmodifiableSet(NetworkMetrics.channelStats.keySet());
+    }
+
+    static void onPacketHooked(int packetId)
+    {
+        NetworkMetrics.packetStats[packetId].hooked.increment();
+    }
+
+    static void onPacketHandled(int packetId, long nanos, boolean cancelled)
+    {
+        PacketStats stats = NetworkMetrics.packetStats[packetId];
+        stats.handlerTime.record(nanos);
+        if (cancelled)
+        {
+            stats.cancelled.increment();
+        }
+    }
+
+    static void onChannelMessageReceived(String channel, int bytes)
+    {
+        ChannelStats stats = NetworkMetrics.getOrCreateChannelStats(channel);
+        stats.messagesIn.increment();
+        stats.bytesIn.add(bytes);
+    }
+
+    static void onChannelMessageSent(String channel, int bytes)
+    {
+        ChannelStats stats = NetworkMetrics.getOrCreateChannelStats(channel);
+        stats.messagesOut.increment();
+        stats.bytesOut.add(bytes);
+    }
+
+    static void onChannelListenerTime(String channel, long nanos)
+    {
+        NetworkMetrics.getOrCreateChannelStats(channel).listenerTime.record(nanos);
+    }
+
+    static void onChannelFault(String channel)
+    {
+        NetworkMetrics.getOrCreateChannelStats(channel).faults.increment();
+    }
+
+    private static ChannelStats getOrCreateChannelStats(String channel)
+    {
+        ChannelStats stats = NetworkMetrics.channelStats.get(channel);
+        if (stats == null)
+        {
+            stats = new ChannelStats(channel);
+            ChannelStats existing = NetworkMetrics.channelStats.putIfAbsent(channel, stats);
+            if (existing != null)
+            {
+                stats = existing;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Get a JSON snapshot of all metrics
+     */
+    public static String toJson()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("timestamp", System.currentTimeMillis());
+
+        JsonArray packets = new JsonArray();
+        for (PacketStats stats : NetworkMetrics.packetStats)
+        {
+            if (stats.getHookedCount() > 0L)
+            {
+                packets.add(stats.toJson());
+            }
+        }
+        json.add("packets", packets);
+
+        JsonArray channels = new JsonArray();
+        for (ChannelStats stats : NetworkMetrics.channelStats.values())
+        {
+            channels.add(stats.toJson());
+        }
+        json.add("channels", channels);
+
+        return NetworkMetrics.gson.toJson(json);
+    }
+
+    /**
+     * Write a JSON snapshot of all metrics to the specified file
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static void writeJson(File file) throws IOException
+    {
+        Files.write(NetworkMetrics.toJson(), file, Charsets.UTF_8);
+    }
+
+    /**
+     * Log the packets and channels with the highest total handler time
+     */
+    public static void dump()
+    {
+        if (!NetworkMetrics.ENABLED)
+        {
+            LiteLoaderLogger.info("Network metrics are not enabled, set liteloader.metrics=true to collect them");
+            return;
+        }
+
+        List<PacketStats> packets = new ArrayList<PacketStats>();
+        for (PacketStats stats : NetworkMetrics.packetStats)
+        {
+            if (stats.getHookedCount() > 0L)
+            {
+                packets.add(stats);
+            }
+        }
+
+        Collections.sort(packets, new Comparator<PacketStats>()
+        {
+            @Override
+            public int compare(PacketStats o1, PacketStats o2)
+            {
+                return Long.compare(o2.handlerTime.getTotalNanos(), o1.handlerTime.getTotalNanos());
+            }
+        });
+
+        LiteLoaderLogger.info("Packet metrics (top %d by handler time):", NetworkMetrics.REPORT_TOP);
+        for (PacketStats stats : packets.subList(0, Math.min(packets.size(), NetworkMetrics.REPORT_TOP)))
+        {
+            LatencyHistogram time = stats.handlerTime;
+            LiteLoaderLogger.info("  %-36s hooked=%-8d cancelled=%-8d total=%.2fms p99<=%.3fms max=%.3fms", stats.packet.getShortName(),
+                    stats.getHookedCount(), stats.getCancelledCount(), time.getTotalNanos() / 1E6,
+                    time.getPercentileNanos(99.0) / 1E6, time.getMaxNanos() / 1E6);
+        }
+
+        List<ChannelStats> channels = new ArrayList<ChannelStats>(NetworkMetrics.channelStats.values());
+        Collections.sort(channels, new Comparator<ChannelStats>()
+        {
+            @Override
+            public int compare(ChannelStats o1, ChannelStats o2)
+            {
+                return Long.compare(o2.listenerTime.getTotalNanos(), o1.listenerTime.getTotalNanos());
+            }
+        });
+
+        LiteLoaderLogger.info("Plugin channel metrics (top %d by listener time):", NetworkMetrics.REPORT_TOP);
+        for (ChannelStats stats : channels.subList(0, Math.min(channels.size(), NetworkMetrics.REPORT_TOP)))
+        {
+            LatencyHistogram time = stats.listenerTime;
+            LiteLoaderLogger.info("  %-20s in=%d/%dB out=%d/%dB faults=%d total=%.2fms p99<=%.3fms max=%.3fms", stats.channel,
+                    stats.getMessagesIn(), stats.getBytesIn(), stats.getMessagesOut(), stats.getBytesOut(), stats.getFaults(),
+                    time.getTotalNanos() / 1E6, time.getPercentileNanos(99.0) / 1E6, time.getMaxNanos() / 1E6);
+        }
+    }
+
+    private static synchronized void startReporter()
+    {
+        if (NetworkMetrics.reporter != null)
+        {
+            return;
+        }
+
+        NetworkMetrics.reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "LiteLoader Network Metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        NetworkMetrics.reporter.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    NetworkMetrics.dump();
+                    if (NetworkMetrics.REPORT_FILE != null)
+                    {
+                        NetworkMetrics.writeJson(new File(NetworkMetrics.REPORT_FILE));
+                    }
+                }
+                catch (Throwable th)
+                {
+                    LiteLoaderLogger.warning(th, "Error reporting network metrics");
+                }
+            }
+        }, NetworkMetrics.REPORT_INTERVAL, NetworkMetrics.REPORT_INTERVAL, TimeUnit.SECONDS);
+    }
+}
@@ -12,6 +12,7 @@ import com.mumfrey.liteloader.ServerChatFilter;
 import com.mumfrey.liteloader.api.InterfaceProvider;
 import com.mumfrey.liteloader.api.Listener;
 import com.mumfrey.liteloader.common.transformers.PacketEventInfo;
+import com.mumfrey.liteloader.common.transformers.PacketHooks;
 import com.mumfrey.liteloader.core.event.HandlerList;
 import com.mumfrey.liteloader.core.event.HandlerList.ReturnLogicOp;
 import com.mumfrey.liteloader.core.runtime.Packets;
@@ -40,6 +41,13 @@ public abstract class PacketEvents implements InterfaceProvider
 {
     protected static PacketEvents instance;
 
+    /**
+     * Flag for each packet id indicating whether anything is listening for the
+     * packet, read directly by the injected packet hooks so that packets with
+     * no listeners are skipped without allocating an EventInfo
+     */
+    public static final boolean[] hasListeners = new boolean[Packets.count()];
+
     class PacketHandlerList extends HandlerList<PacketHandler>
     {
         private static final long serialVersionUID = 1L;
@@ -78,6 +86,12 @@ public abstract class PacketEvents implements InterfaceProvider
     {
         PacketEvents.instance = this;
         this.loader = LiteLoader.getInstance();
+
+        for (int packetId : new int[] { this.loginSuccessPacketId, this.serverChatPacketId, this.clientChatPacketId, this.joinGamePacketId,
+                this.serverPayloadPacketId, this.clientPayloadPacketId, this.clientSettingsPacketId })
+        {
+            PacketEvents.hasListeners[packetId] = true;
+        }
     }
 
     @Override
@@ -127,12 +141,19 @@ public abstract class PacketEvents implements InterfaceProvider
                     continue;
                 }
 
+                if (!PacketHooks.isHooked(packetId))
+                {
+                    LiteLoaderLogger.warning("PacketHandler %s registered a handler for packet class %s which is not hooked, the packet should be "
+                            + "listed in handledPackets in the mod metadata", handler.getName(), packetClassName);
+                }
+
                 if (this.packetHandlers[packetId] == null)
                 {
                     this.packetHandlers[packetId] = new PacketHandlerList();
                 }
 
                 this.packetHandlers[packetId].add(handler);
+                PacketEvents.hasListeners[packetId] = true;
             }
         }
     }
@@ -145,7 +166,14 @@ public abstract class PacketEvents implements InterfaceProvider
      */
     public static void handlePacket(PacketEventInfo<Packet<?>> e, INetHandler netHandler)
     {
-        PacketEvents.instance.handlePacket(e, netHandler, e.getPacketId());
+        try
+        {
+            PacketEvents.instance.handlePacket(e, netHandler, e.getPacketId());
+        }
+        finally
+        {
+            e.release();
+        }
     }
 
     private void handlePacket(PacketEventInfo<Packet<?>> e, INetHandler netHandler, int packetId)
@@ -158,11 +186,26 @@ public abstract class PacketEvents implements InterfaceProvider
             return;
         }
 
+        // Counted here rather than in the hook, packets arriving off-thread are hooked again when vanilla reschedules them
+        if (NetworkMetrics.ENABLED)
+        {
+            NetworkMetrics.onPacketHooked(packetId);
+        }
+
         if (this.handlePacketEvent(e, netHandler, packetId) || this.packetHandlers[packetId] == null || e.isCancelled())
         {
             return;
         }
 
+        if (NetworkMetrics.ENABLED)
+        {
+            long start = System.nanoTime();
+            boolean handled = this.packetHandlers[packetId].all().handlePacket(netHandler, e.getSource());
+            NetworkMetrics.onPacketHandled(packetId, System.nanoTime() - start, !handled);
+            if (!handled) e.cancel();
+            return;
+        }
+
         if (this.packetHandlers[packetId].all().handlePacket(netHandler, e.getSource()))
         {
             return;
@@ -187,6 +230,12 @@ public abstract class PacketEvents implements InterfaceProvider
 
         if (packetId == this.loginSuccessPacketId)
         {
+            // Login packets are handled on the network thread and never rescheduled, so count them here
+            if (NetworkMetrics.ENABLED)
+            {
+                NetworkMetrics.onPacketHooked(packetId);
+            }
+
             this.handlePacket(e, netHandler, (SPacketLoginSuccess)packet);
         }
     }
@@ -6,6 +6,7 @@
 package com.mumfrey.liteloader.core;
 
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 
 import com.mumfrey.liteloader.PlayerInteractionListener.MouseButton;
 import com.mumfrey.liteloader.core.LiteLoaderEventBroker.InteractType;
@@ -24,6 +25,50 @@ public class PlayerEventState implements IEventState
 {
     private static long MISS = new BlockPos(-1, -1, -1).toLong();
 
+    /**
+     * Maximum distance for the click trace, regardless of view distance
+     */
+    private static final double MAX_TRACE_DISTANCE = Math.max(1, Integer.getInteger("liteloader.interact.maxTraceDistance", 256).intValue());
+
+    /**
+     * Result of the most recent ray trace at a particular distance, valid
+     * until the end of the tick as long as the player has not moved or turned
+     * 
+     * @author Adam Mummery-Smith
+     */
+    static final class TraceCache
+    {
+        private double x, y, z, distance;
+        private float yaw, pitch;
+        private boolean valid;
+        private RayTraceResult result;
+
+        RayTraceResult trace(EntityPlayerMP player, double distance)
+        {
+            if (this.valid && this.distance == distance && this.x == player.posX && this.y == player.posY && this.z == player.posZ
+                    && this.yaw == player.rotationYaw && this.pitch == player.rotationPitch)
+            {
+                return this.result;
+            }
+
+            this.result = EntityUtilities.rayTraceFromEntity(player, distance, 0.0F);
+            this.x = player.posX;
+            this.y = player.posY;
+            this.z = player.posZ;
+            this.yaw = player.rotationYaw;
+            this.pitch = player.rotationPitch;
+            this.distance = distance;
+            this.valid = true;
+            return this.result;
+        }
+
+        void invalidate()
+        {
+            this.valid = false;
+            this.result = null;
+        }
+    }
+
     private WeakReference<EntityPlayerMP> playerRef;
 
     private final LiteLoaderEventBroker<?, ?> broker;
@@ -38,10 +83,18 @@ public class PlayerEventState implements IEventState
     
     private EnumHand hand = EnumHand.MAIN_HAND;
 
-    private RayTraceResult hit;
+    private final TraceCache clickTrace = new TraceCache();
+
+    private final TraceCache reachTrace = new TraceCache();
 
     private String locale = "en_US";
 
+    /**
+     * Position at which each filtered move listener was last notified, five
+     * values (x, y, z, yaw, pitch) per listener, NaN until the first move
+     */
+    private double[] moveAnchors;
+
     public PlayerEventState(EntityPlayerMP player, LiteLoaderEventBroker<?, ?> broker)
     {
         this.playerRef = new WeakReference<EntityPlayerMP>(player);
@@ -50,7 +103,7 @@ public class PlayerEventState implements IEventState
 
     public void setTraceDistance(int renderDistance)
     {
-        this.traceDistance = renderDistance * 16.0;
+        this.traceDistance = Math.min(renderDistance * 16.0, PlayerEventState.MAX_TRACE_DISTANCE);
     }
 
     public double getTraceDistance()
@@ -76,6 +129,25 @@ public class PlayerEventState implements IEventState
         return this.playerRef.get();
     }
 
+    /**
+     * Get the move anchors for the specified number of filtered move
+     * listeners, the array is reused between moves
+     * 
+     * @param listenerCount
+     */
+    double[] getMoveAnchors(int listenerCount)
+    {
+        int size = listenerCount * 5;
+        if (this.moveAnchors == null || this.moveAnchors.length < size)
+        {
+            int oldSize = this.moveAnchors != null ? this.moveAnchors.length : 0;
+            this.moveAnchors = this.moveAnchors != null ? Arrays.copyOf(this.moveAnchors, size) : new double[size];
+            Arrays.fill(this.moveAnchors, oldSize, size, Double.NaN);
+        }
+
+        return this.moveAnchors;
+    }
+
     public void onSpawned()
     {
     }
@@ -83,16 +155,23 @@ public class PlayerEventState implements IEventState
     @Override
     public void onTick(MinecraftServer server)
     {
-        if (this.leftClick && this.suppressLeftTicks == 0 && !this.digging)
-        {
-            this.broker.onPlayerClickedAir(this.getPlayer(), MouseButton.LEFT, this.hand,
-                    this.hit.getBlockPos(), this.hit.sideHit, this.hit.typeOfHit);
-        }
+        boolean clickedLeft = this.leftClick && this.suppressLeftTicks == 0 && !this.digging;
+        boolean clickedRight = this.rightClick && this.suppressRightTicks == 0;
+        EntityPlayerMP player = clickedLeft || clickedRight ? this.getPlayer() : null;
 
-        if (this.rightClick && this.suppressRightTicks == 0)
+        // The trace is only needed to report clicks in the air, so it's deferred until we know one happened
+        RayTraceResult hit = player != null ? this.clickTrace.trace(player, this.traceDistance) : null;
+        if (hit != null)
         {
-            this.broker.onPlayerClickedAir(this.getPlayer(), MouseButton.RIGHT, this.hand,
-                    this.hit.getBlockPos(), this.hit.sideHit,  this.hit.typeOfHit);
+            if (clickedLeft)
+            {
+                this.broker.onPlayerClickedAir(player, MouseButton.LEFT, this.hand, hit.getBlockPos(), hit.sideHit, hit.typeOfHit);
+            }
+
+            if (clickedRight)
+            {
+                this.broker.onPlayerClickedAir(player, MouseButton.RIGHT, this.hand, hit.getBlockPos(), hit.sideHit, hit.typeOfHit);
+            }
         }
 
         if (this.suppressLeftTicks > 0) this.suppressLeftTicks--;
@@ -100,6 +179,8 @@ public class PlayerEventState implements IEventState
 
         this.leftClick = false;
         this.rightClick = false;
+        this.clickTrace.invalidate();
+        this.reachTrace.invalidate();
     }
 
     public boolean onPlayerInteract(InteractType action, EntityPlayerMP player, EnumHand hand, ItemStack stack, BlockPos position, EnumFacing side)
@@ -115,8 +196,6 @@ public class PlayerEventState implements IEventState
             this.suppressLeftTicks++;
             return true;
         }
-        
-        this.hit = EntityUtilities.rayTraceFromEntity(player, this.traceDistance, 0.0F);
 
         if (action == InteractType.LEFT_CLICK)
         {
@@ -150,8 +229,8 @@ public class PlayerEventState implements IEventState
 
             if (position.toLong() == PlayerEventState.MISS)
             {
-                RayTraceResult actualHit = EntityUtilities.rayTraceFromEntity(player, player.capabilities.isCreativeMode ? 5.0 : 4.5, 0.0F);
-                if (actualHit.typeOfHit == Type.MISS)
+                RayTraceResult actualHit = this.reachTrace.trace(player, player.capabilities.isCreativeMode ? 5.0 : 4.5);
+                if (actualHit != null && actualHit.typeOfHit == Type.MISS)
                 {
                     this.digging = false;
                     this.hand = hand;
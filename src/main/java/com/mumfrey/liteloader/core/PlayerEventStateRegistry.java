@@ -0,0 +1,120 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * Registry of per-player event states keyed by player UUID. Players join and
+ * leave far too often to keep their states in a baked HandlerList, so instead
+ * lookups go via a concurrent map and ticking iterates over a copy-on-write
+ * array which is only rebuilt when a player is added or removed.
+ *
+ * @author Adam Mummery-Smith
+ */
+class PlayerEventStateRegistry
+{
+    private static final PlayerEventState[] NONE = new PlayerEventState[0];
+
+    private final LiteLoaderEventBroker<?, ?> broker;
+
+    /**
+     * States by player UUID
+     */
+    private final Map<UUID, PlayerEventState> states = new ConcurrentHashMap<UUID, PlayerEventState>();
+
+    /**
+     * Snapshot of the current states in the order they were added, replaced
+     * (never modified) whenever the registry changes
+     */
+    private volatile PlayerEventState[] snapshot = PlayerEventStateRegistry.NONE;
+
+    PlayerEventStateRegistry(LiteLoaderEventBroker<?, ?> broker)
+    {
+        this.broker = broker;
+    }
+
+    /**
+     * Get the state for the specified player, creating it if necessary
+     */
+    PlayerEventState get(EntityPlayerMP player)
+    {
+        UUID uuid = player.getUniqueID();
+        PlayerEventState playerState = this.states.get(uuid);
+        if (playerState != null)
+        {
+            return playerState;
+        }
+
+        synchronized (this)
+        {
+            playerState = this.states.get(uuid);
+            if (playerState == null)
+            {
+                playerState = new PlayerEventState(player, this.broker);
+                this.states.put(uuid, playerState);
+
+                PlayerEventState[] snapshot = Arrays.copyOf(this.snapshot, this.snapshot.length + 1);
+                snapshot[snapshot.length - 1] = playerState;
+                this.snapshot = snapshot;
+            }
+        }
+
+        return playerState;
+    }
+
+    /**
+     * Remove the state for the specified player, if one exists
+     */
+    synchronized void remove(EntityPlayerMP player)
+    {
+        PlayerEventState playerState = this.states.remove(player.getUniqueID());
+        if (playerState == null)
+        {
+            return;
+        }
+
+        PlayerEventState[] snapshot = this.snapshot;
+        for (int index = 0; index < snapshot.length; index++)
+        {
+            if (snapshot[index] == playerState)
+            {
+                PlayerEventState[] newSnapshot = new PlayerEventState[snapshot.length - 1];
+                System.arraycopy(snapshot, 0, newSnapshot, 0, index);
+                System.arraycopy(snapshot, index + 1, newSnapshot, index, snapshot.length - index - 1);
+                this.snapshot = newSnapshot;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove all player states
+     */
+    synchronized void clear()
+    {
+        this.states.clear();
+        this.snapshot = PlayerEventStateRegistry.NONE;
+    }
+
+    /**
+     * Tick all player states, does not allocate
+     */
+    void onTick(MinecraftServer server)
+    {
+        PlayerEventState[] snapshot = this.snapshot;
+        for (int index = 0; index < snapshot.length; index++)
+        {
+            snapshot[index].onTick(server);
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.mumfrey.liteloader.interfaces.FastIterableDeque;
 import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
 
 import io.netty.buffer.Unpooled;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.INetHandler;
 import net.minecraft.network.PacketBuffer;
 
@@ -32,12 +33,17 @@ public abstract class PluginChannels<L extends CommonPluginChannelListener> impl
     // reserved channel consts
     protected static final String CHANNEL_REGISTER = "REGISTER";
     protected static final String CHANNEL_UNREGISTER = "UNREGISTER";
+
+    /**
+     * Channel carrying batches of queued messages, see {@link ChannelBatch}
+     */
+    protected static final String CHANNEL_BATCH = "LL|Batch";
     
     /**
      * Maximum allowable length of a channel name, previously 16 but increased
      * to 20 at some point. 
      */
-    private static final int MAX_CHANNEL_NAME_LENGTH = 20;
+    static final int MAX_CHANNEL_NAME_LENGTH = 20;
 
     /**
      * Number of faults for a specific listener before a warning is generated
@@ -122,7 +128,10 @@ public abstract class PluginChannels<L extends CommonPluginChannelListener> impl
     {
         this.pluginChannels.clear();
         this.remotePluginChannels.clear();
-        this.faultingPluginChannelListeners.clear();
+        synchronized (this.faultingPluginChannelListeners)
+        {
+            this.faultingPluginChannelListeners.clear();
+        }
     }
 
     /**
@@ -132,13 +141,7 @@ public abstract class PluginChannels<L extends CommonPluginChannelListener> impl
     {
         try
         {
-            byte[] bytes = new byte[data.readableBytes()];
-            data.readBytes(bytes);
-            String channels = new String(bytes, Charsets.UTF_8);
-            for (String channel : channels.split("\u0000"))
-            {
-                this.remotePluginChannels.add(channel);
-            }
+            this.remotePluginChannels.addAll(PluginChannels.readChannelNames(data));
         }
         catch (Exception ex)
         {
@@ -146,6 +149,31 @@ public abstract class PluginChannels<L extends CommonPluginChannelListener> impl
         }
     }
 
+    /**
+     * Read the NUL-separated channel names from a REGISTER or UNREGISTER
+     * packet, decoding each name directly from the buffer
+     * 
+     * @param data
+     */
+    protected static List<String> readChannelNames(PacketBuffer data)
+    {
+        List<String> channels = new ArrayList<String>();
+        int end = data.writerIndex();
+        for (int start = data.readerIndex(); start < end;)
+        {
+            int separator = data.indexOf(start, end, (byte)0);
+            int nameEnd = separator < 0 ? end : separator;
+            if (nameEnd > start)
+            {
+                channels.add(data.toString(start, nameEnd - start, Charsets.UTF_8));
+            }
+            start = nameEnd + 1;
+        }
+
+        data.readerIndex(end);
+        return channels;
+    }
+
     /**
      * 
      */
@@ -164,6 +192,12 @@ public abstract class PluginChannels<L extends CommonPluginChannelListener> impl
                 separator = true;
             }
 
+            // Advertise batch support so that the remote host can send us batches
+            if (ChannelBatch.ENABLED)
+            {
+                channelList.append("\u0000").append(PluginChannels.CHANNEL_BATCH);
+            }
+
             PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
             buffer.writeBytes(channelList.toString().getBytes(Charsets.UTF_8));
             return buffer;
@@ -252,6 +286,20 @@ public abstract class PluginChannels<L extends CommonPluginChannelListener> impl
             return channels.isRemoteChannelRegistered(channel);
         }
 
+        /**
+         * True if this policy allows outbound traffic on the specified channel
+         * to the specified player
+         * 
+         * @param channels
+         * @param recipient
+         * @param channel
+         */
+        public boolean allows(ServerPluginChannels channels, EntityPlayerMP recipient, String channel)
+        {
+            if (this == ChannelPolicy.DISPATCH_ALWAYS) return true;
+            return channels.isRemoteChannelRegistered(recipient, channel);
+        }
+
         /**
          * True if this policy does not throw an exception for unregistered
          * outbound channels
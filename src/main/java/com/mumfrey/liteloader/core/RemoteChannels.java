@@ -0,0 +1,224 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set of plugin channels registered by a single remote connection. Channel
+ * names are interned to small integer ids which are shared by all connections,
+ * so each connection only needs to store a bitset and a membership test is a
+ * single bit test. Registrations are rare compared to lookups, so the bitset
+ * is copied on write and lookups don't lock.
+ *
+ * <p>The number of interned names is capped so that clients registering
+ * large numbers of bogus channels can't grow the table without limit, names
+ * beyond the cap are stored in a per-connection set instead. The number of
+ * channels each connection can register is also capped, and invalid channel
+ * names are ignored.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+final class RemoteChannels
+{
+    /**
+     * Maximum number of channel names to intern
+     */
+    private static final int MAX_INTERNED_CHANNELS = 4096;
+
+    /**
+     * Maximum number of channels a single connection can register
+     */
+    private static final int MAX_CHANNELS = Math.max(1, Integer.getInteger("liteloader.channels.maxRemote", 1024).intValue());
+
+    private static final long[] NONE = new long[0];
+
+    /**
+     * Interned channel ids, shared by all connections
+     */
+    private static final Map<String, Integer> channelIds = new ConcurrentHashMap<String, Integer>();
+
+    private static int nextChannelId;
+
+    /**
+     * Bitset of registered channel ids
+     */
+    private volatile long[] registered = RemoteChannels.NONE;
+
+    /**
+     * Registered channels which could not be interned, usually null
+     */
+    private volatile Set<String> overflow;
+
+    /**
+     * Number of channels registered by this connection
+     */
+    private int count;
+
+    /**
+     * Get whether the specified channel is registered
+     */
+    boolean contains(String channel)
+    {
+        Integer channelId = RemoteChannels.channelIds.get(channel);
+        if (channelId != null)
+        {
+            int id = channelId.intValue();
+            long[] registered = this.registered;
+            int word = id >>> 6;
+            if (word < registered.length && (registered[word] & (1L << id)) != 0L)
+            {
+                return true;
+            }
+        }
+
+        Set<String> overflow = this.overflow;
+        return overflow != null && overflow.contains(channel);
+    }
+
+    /**
+     * Register the specified channels, invalid channel names and channels
+     * beyond the per-connection limit are ignored
+     *
+     * @return the channels which were newly registered
+     */
+    synchronized List<String> addAll(Collection<String> channels)
+    {
+        List<String> added = new ArrayList<String>();
+        long[] registered = this.registered;
+        Set<String> overflow = null;
+
+        for (String channel : channels)
+        {
+            if (this.count >= RemoteChannels.MAX_CHANNELS)
+            {
+                break;
+            }
+
+            if (!PluginChannels.isValidChannelName(channel) || this.contains(channel) || (overflow != null && overflow.contains(channel)))
+            {
+                continue;
+            }
+
+            int id = RemoteChannels.intern(channel);
+            if (id < 0)
+            {
+                // Copy the overflow set once per call, readers may be using the current set
+                if (overflow == null)
+                {
+                    overflow = this.overflow != null ? new HashSet<String>(this.overflow) : new HashSet<String>();
+                }
+                overflow.add(channel);
+            }
+            else
+            {
+                int word = id >>> 6;
+                if (word >= registered.length || registered == this.registered)
+                {
+                    registered = Arrays.copyOf(registered, Math.max(registered.length, word + 1));
+                }
+                registered[word] |= 1L << id;
+            }
+
+            added.add(channel);
+            this.count++;
+        }
+
+        this.registered = registered;
+        if (overflow != null)
+        {
+            this.overflow = overflow;
+        }
+
+        return added;
+    }
+
+    /**
+     * Remove all registered channels
+     */
+    synchronized void clear()
+    {
+        this.registered = RemoteChannels.NONE;
+        this.overflow = null;
+        this.count = 0;
+    }
+
+    /**
+     * Discard all interned channel ids, must only be called when no
+     * connections are tracked
+     */
+    static void clearInterned()
+    {
+        synchronized (RemoteChannels.channelIds)
+        {
+            RemoteChannels.channelIds.clear();
+            RemoteChannels.nextChannelId = 0;
+        }
+    }
+
+    /**
+     * Get the registered channels as a new set
+     */
+    Set<String> toSet()
+    {
+        Set<String> channels = new HashSet<String>();
+        long[] registered = this.registered;
+        for (Map.Entry<String, Integer> entry : RemoteChannels.channelIds.entrySet())
+        {
+            int id = entry.getValue().intValue();
+            int word = id >>> 6;
+            if (word < registered.length && (registered[word] & (1L << id)) != 0L)
+            {
+                channels.add(entry.getKey());
+            }
+        }
+
+        Set<String> overflow = this.overflow;
+        if (overflow != null)
+        {
+            channels.addAll(overflow);
+        }
+
+        return channels;
+    }
+
+    /**
+     * Get the id for the specified channel, allocating one if necessary.
+     * Returns -1 if the intern table is full.
+     */
+    private static int intern(String channel)
+    {
+        Integer channelId = RemoteChannels.channelIds.get(channel);
+        if (channelId != null)
+        {
+            return channelId.intValue();
+        }
+
+        synchronized (RemoteChannels.channelIds)
+        {
+            channelId = RemoteChannels.channelIds.get(channel);
+            if (channelId == null)
+            {
+                if (RemoteChannels.nextChannelId >= RemoteChannels.MAX_INTERNED_CHANNELS)
+                {
+                    return -1;
+                }
+
+                channelId = Integer.valueOf(RemoteChannels.nextChannelId++);
+                RemoteChannels.channelIds.put(channel, channelId);
+            }
+
+            return channelId.intValue();
+        }
+    }
+}
@@ -5,6 +5,17 @@
  */
 package com.mumfrey.liteloader.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.mumfrey.liteloader.AsyncServerPluginChannelListener;
 import com.mumfrey.liteloader.ServerPluginChannelListener;
 import com.mumfrey.liteloader.api.Listener;
 import com.mumfrey.liteloader.core.event.HandlerList;
@@ -13,12 +24,15 @@ import com.mumfrey.liteloader.interfaces.FastIterableDeque;
 import com.mumfrey.liteloader.permissions.PermissionsManagerServer;
 import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.INetHandler;
 import net.minecraft.network.NetHandlerPlayServer;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.network.play.client.CPacketCustomPayload;
 import net.minecraft.network.play.server.SPacketCustomPayload;
+import net.minecraft.server.MinecraftServer;
 
 /**
  * Handler for server plugin channels
@@ -29,6 +43,31 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
 {
     private static ServerPluginChannels instance;
 
+    /**
+     * Maximum size of a server to client custom payload
+     */
+    private static final int MAX_PAYLOAD_SIZE = 1048576;
+
+    /**
+     * Channels registered by each connected player, by player UUID
+     */
+    private final ConcurrentMap<UUID, RemoteChannels> playerChannels = new ConcurrentHashMap<UUID, RemoteChannels>();
+
+    /**
+     * Running server, used to enumerate broadcast recipients
+     */
+    private MinecraftServer server;
+
+    /**
+     * Dispatcher for thread-safe listeners, null if async dispatch is disabled
+     */
+    private final AsyncChannelDispatcher asyncDispatcher = AsyncChannelDispatcher.ENABLED ? new AsyncChannelDispatcher(this) : null;
+
+    /**
+     * Messages queued during the current tick, by recipient
+     */
+    private final Map<EntityPlayerMP, ChannelBatch> batches = new LinkedHashMap<EntityPlayerMP, ChannelBatch>();
+
     public ServerPluginChannels()
     {
         if (ServerPluginChannels.instance != null)
@@ -82,9 +121,16 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
         super.addPluginChannelListener(pluginChannelListener);
     }
 
-    void onServerStartup()
+    void onServerStartup(MinecraftServer server)
     {
+        this.server = server;
         this.clearPluginChannels(null);
+        this.playerChannels.clear();
+        RemoteChannels.clearInterned();
+        synchronized (this.batches)
+        {
+            this.batches.clear();
+        }
 
         // Enumerate mods for plugin channels
         for (ServerPluginChannelListener pluginChannelListener : this.pluginChannelListeners)
@@ -98,6 +144,79 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
         this.sendRegisteredPluginChannels(player);
     }
 
+    void onPlayerLeft(EntityPlayerMP player)
+    {
+        this.playerChannels.remove(player.getUniqueID());
+        synchronized (this.batches)
+        {
+            this.batches.remove(player);
+        }
+    }
+
+    void onServerTickEnd()
+    {
+        this.flushQueuedMessages();
+    }
+
+    /**
+     * Check whether a plugin channel is registered by the specified player's
+     * client
+     * 
+     * @param player
+     * @param channel
+     * @return true if the channel is registered by the player's client
+     */
+    public boolean isRemoteChannelRegistered(EntityPlayerMP player, String channel)
+    {
+        RemoteChannels channels = player != null ? this.playerChannels.get(player.getUniqueID()) : null;
+        return channels != null && channels.contains(channel);
+    }
+
+    /**
+     * Get the set of channels registered by the specified player's client
+     * 
+     * @param player
+     */
+    public Set<String> getRemoteChannels(EntityPlayerMP player)
+    {
+        RemoteChannels channels = player != null ? this.playerChannels.get(player.getUniqueID()) : null;
+        return channels != null ? Collections.unmodifiableSet(channels.toSet()) : Collections.<String>emptySet();
+    }
+
+    /**
+     * @param sender
+     * @param data
+     */
+    private void onRegisterPacketReceived(EntityPlayerMP sender, PacketBuffer data)
+    {
+        try
+        {
+            List<String> channels = PluginChannels.readChannelNames(data);
+
+            UUID uuid = sender.getUniqueID();
+            RemoteChannels senderChannels = this.playerChannels.get(uuid);
+            if (senderChannels == null)
+            {
+                senderChannels = new RemoteChannels();
+                RemoteChannels existing = this.playerChannels.putIfAbsent(uuid, senderChannels);
+                if (existing != null) senderChannels = existing;
+            }
+
+            List<String> added = senderChannels.addAll(channels);
+            this.remotePluginChannels.addAll(added);
+
+            if (added.size() < channels.size())
+            {
+                LiteLoaderLogger.debug("Ignored %d invalid, duplicate or excess channels registered by %s", channels.size() - added.size(),
+                        sender.getName());
+            }
+        }
+        catch (Exception ex)
+        {
+            LiteLoaderLogger.warning(ex, "Error decoding REGISTER packet from %s %s", sender.getName(), ex.getClass().getSimpleName());
+        }
+    }
+
     /**
      * Callback for the plugin channel hook
      * 
@@ -124,7 +243,11 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
     {
         if (PluginChannels.CHANNEL_REGISTER.equals(channel))
         {
-            this.onRegisterPacketReceived(data);
+            this.onRegisterPacketReceived(sender, data);
+        }
+        else if (PluginChannels.CHANNEL_BATCH.equals(channel))
+        {
+            this.onBatchReceived(sender, data);
         }
         else if (this.pluginChannels.containsKey(channel))
         {
@@ -142,6 +265,33 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
         }
     }
 
+    /**
+     * @param sender
+     * @param data
+     */
+    private void onBatchReceived(final EntityPlayerMP sender, PacketBuffer data)
+    {
+        try
+        {
+            ChannelBatch.read(data, new ChannelBatch.FrameHandler()
+            {
+                @Override
+                public void onFrame(String channel, PacketBuffer frame)
+                {
+                    if (PluginChannels.isValidChannelName(channel) && !PluginChannels.CHANNEL_BATCH.equals(channel))
+                    {
+                        ServerPluginChannels.this.onPluginChannelMessage(sender, channel, frame);
+                    }
+                }
+            });
+        }
+        catch (Exception ex)
+        {
+            LiteLoaderLogger.warning(ex, "Error decoding batched plugin channel messages from %s %s", sender.getName(),
+                    ex.getClass().getSimpleName());
+        }
+    }
+
     /**
      * @param sender
      * @param channel
@@ -149,30 +299,86 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
      */
     protected void onModPacketReceived(EntityPlayerMP sender, String channel, PacketBuffer data)
     {
+        int start = data.readerIndex(), length = data.readableBytes();
+        if (NetworkMetrics.ENABLED)
+        {
+            NetworkMetrics.onChannelMessageReceived(channel, length);
+        }
+        ByteBuf asyncData = null;
+
         for (ServerPluginChannelListener pluginChannelListener : this.pluginChannels.get(channel))
         {
-            try
-            {
-                pluginChannelListener.onCustomPayload(sender, channel, data);
-            }
-            catch (Exception ex)
+            if (this.asyncDispatcher != null && pluginChannelListener instanceof AsyncServerPluginChannelListener)
             {
-                int failCount = 1;
-                if (this.faultingPluginChannelListeners.containsKey(pluginChannelListener))
+                // Async listeners get a private copy since the packet buffer may be recycled once it is processed
+                if (asyncData == null)
                 {
-                    failCount = this.faultingPluginChannelListeners.get(pluginChannelListener).intValue() + 1;
+                    asyncData = data.copy(start, length);
                 }
 
-                if (failCount >= PluginChannels.WARN_FAULT_THRESHOLD)
-                {
-                    LiteLoaderLogger.warning("Plugin channel listener %s exceeded fault threshold on channel %s with %s",
-                            pluginChannelListener.getName(), channel, ex.getClass().getSimpleName());
-                    this.faultingPluginChannelListeners.remove(pluginChannelListener);
-                }
-                else
+                if (!this.asyncDispatcher.dispatch(pluginChannelListener, sender, channel, new PacketBuffer(asyncData.duplicate())))
                 {
-                    this.faultingPluginChannelListeners.put(pluginChannelListener, Integer.valueOf(failCount));
+                    this.onListenerFault(pluginChannelListener, channel, "queue full");
                 }
+                continue;
+            }
+
+            this.dispatchCustomPayload(pluginChannelListener, sender, channel, data);
+        }
+    }
+
+    /**
+     * Deliver a message to a single listener, called on the server thread for
+     * regular listeners and on a worker thread for async listeners
+     * 
+     * @param pluginChannelListener
+     * @param sender
+     * @param channel
+     * @param data
+     */
+    void dispatchCustomPayload(ServerPluginChannelListener pluginChannelListener, EntityPlayerMP sender, String channel, PacketBuffer data)
+    {
+        long start = NetworkMetrics.ENABLED ? System.nanoTime() : 0L;
+        try
+        {
+            pluginChannelListener.onCustomPayload(sender, channel, data);
+        }
+        catch (Exception ex)
+        {
+            if (NetworkMetrics.ENABLED) NetworkMetrics.onChannelFault(channel);
+            this.onListenerFault(pluginChannelListener, channel, ex.getClass().getSimpleName());
+        }
+
+        if (NetworkMetrics.ENABLED)
+        {
+            NetworkMetrics.onChannelListenerTime(channel, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param pluginChannelListener
+     * @param channel
+     * @param reason
+     */
+    private void onListenerFault(ServerPluginChannelListener pluginChannelListener, String channel, String reason)
+    {
+        synchronized (this.faultingPluginChannelListeners)
+        {
+            int failCount = 1;
+            if (this.faultingPluginChannelListeners.containsKey(pluginChannelListener))
+            {
+                failCount = this.faultingPluginChannelListeners.get(pluginChannelListener).intValue() + 1;
+            }
+
+            if (failCount >= PluginChannels.WARN_FAULT_THRESHOLD)
+            {
+                LiteLoaderLogger.warning("Plugin channel listener %s exceeded fault threshold on channel %s with %s",
+                        pluginChannelListener.getName(), channel, reason);
+                this.faultingPluginChannelListeners.remove(pluginChannelListener);
+            }
+            else
+            {
+                this.faultingPluginChannelListeners.put(pluginChannelListener, Integer.valueOf(failCount));
             }
         }
     }
@@ -235,7 +441,7 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
             throw new RuntimeException("Invalid channel name specified"); 
         }
 
-        if (!policy.allows(this, channel))
+        if (!policy.allows(this, recipient, channel))
         {
             if (policy.isSilent()) return false;
             throw new UnregisteredChannelException(channel);
@@ -245,6 +451,249 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
         return ServerPluginChannels.dispatch(recipient, payload);
     }
 
+    /**
+     * Queue a message to the specified client on a plugin channel. Messages
+     * queued for a client during a tick are sent together in a single packet
+     * at the end of the tick if the client supports batching, otherwise the
+     * message is sent immediately. Queued messages are delivered in the order
+     * they were queued, but not necessarily in order with messages sent using
+     * {@link #sendMessage}.
+     * 
+     * @param recipient
+     * @param channel Channel to send, must not be a reserved channel name
+     * @param data Message data, the data is copied so the buffer can be
+     *      reused once this method returns
+     */
+    public static boolean queueMessage(EntityPlayerMP recipient, String channel, PacketBuffer data, ChannelPolicy policy)
+    {
+        if (ServerPluginChannels.instance != null)
+        {
+            return ServerPluginChannels.instance.queue(recipient, channel, data, policy);
+        }
+
+        return false;
+    }
+
+    /**
+     * @param recipient
+     * @param channel
+     * @param data
+     * @param policy
+     */
+    private boolean queue(EntityPlayerMP recipient, String channel, PacketBuffer data, ChannelPolicy policy)
+    {
+        if (recipient == null) return false;
+
+        int length = data.readableBytes();
+        synchronized (this.batches)
+        {
+            ChannelBatch batch = this.batches.get(recipient);
+            if (!ChannelBatch.ENABLED || !this.isRemoteChannelRegistered(recipient, PluginChannels.CHANNEL_BATCH)
+                    || (batch != null && !batch.canBatch(channel, length)))
+            {
+                if (batch != null) this.flush(recipient, batch);
+                return this.send(recipient, channel, data, policy);
+            }
+
+            if (!PluginChannels.isValidChannelName(channel))
+            {
+                throw new RuntimeException("Invalid channel name specified"); 
+            }
+
+            if (!policy.allows(this, recipient, channel))
+            {
+                if (policy.isSilent()) return false;
+                throw new UnregisteredChannelException(channel);
+            }
+
+            if (batch == null)
+            {
+                batch = new ChannelBatch(ServerPluginChannels.MAX_PAYLOAD_SIZE);
+                if (!batch.canBatch(channel, length))
+                {
+                    return this.send(recipient, channel, data, policy);
+                }
+                this.batches.put(recipient, batch);
+            }
+            else if (!batch.fits(channel, length))
+            {
+                this.flush(recipient, batch);
+            }
+
+            batch.add(channel, data);
+            return true;
+        }
+    }
+
+    /**
+     * Send all messages queued during this tick
+     */
+    private void flushQueuedMessages()
+    {
+        synchronized (this.batches)
+        {
+            for (Map.Entry<EntityPlayerMP, ChannelBatch> entry : this.batches.entrySet())
+            {
+                this.flush(entry.getKey(), entry.getValue());
+            }
+
+            this.batches.clear();
+        }
+    }
+
+    private void flush(EntityPlayerMP recipient, ChannelBatch batch)
+    {
+        if (!batch.isEmpty())
+        {
+            ServerPluginChannels.dispatch(recipient, new SPacketCustomPayload(PluginChannels.CHANNEL_BATCH, batch.drain()));
+        }
+    }
+
+    /**
+     * Send a message to all connected clients on a plugin channel
+     * 
+     * @param channel Channel to send, must not be a reserved channel name
+     * @param data
+     * @param policy
+     * @return number of clients the message was dispatched to
+     * @see #multicastMessage
+     */
+    public static int broadcastMessage(String channel, PacketBuffer data, ChannelPolicy policy)
+    {
+        return ServerPluginChannels.multicastMessage(ServerPluginChannels.getPlayers(), channel, data, policy);
+    }
+
+    /**
+     * Send a message on a plugin channel to all connected clients whose player
+     * is in the specified dimension
+     * 
+     * @param dimension Dimension id
+     * @param channel Channel to send, must not be a reserved channel name
+     * @param data
+     * @param policy
+     * @return number of clients the message was dispatched to
+     * @see #multicastMessage
+     */
+    public static int broadcastMessageToDimension(int dimension, String channel, PacketBuffer data, ChannelPolicy policy)
+    {
+        List<EntityPlayerMP> recipients = new ArrayList<EntityPlayerMP>();
+        for (EntityPlayerMP player : ServerPluginChannels.getPlayers())
+        {
+            if (player.dimension == dimension)
+            {
+                recipients.add(player);
+            }
+        }
+
+        return ServerPluginChannels.multicastMessage(recipients, channel, data, policy);
+    }
+
+    /**
+     * Send a message on a plugin channel to all connected clients whose player
+     * is in the specified dimension and within the specified radius of a point
+     * 
+     * @param dimension Dimension id
+     * @param x
+     * @param y
+     * @param z
+     * @param radius
+     * @param channel Channel to send, must not be a reserved channel name
+     * @param data
+     * @param policy
+     * @return number of clients the message was dispatched to
+     * @see #multicastMessage
+     */
+    public static int broadcastMessageAround(int dimension, double x, double y, double z, double radius, String channel, PacketBuffer data,
+            ChannelPolicy policy)
+    {
+        double radiusSq = radius * radius;
+        List<EntityPlayerMP> recipients = new ArrayList<EntityPlayerMP>();
+        for (EntityPlayerMP player : ServerPluginChannels.getPlayers())
+        {
+            if (player.dimension == dimension && player.getDistanceSq(x, y, z) <= radiusSq)
+            {
+                recipients.add(player);
+            }
+        }
+
+        return ServerPluginChannels.multicastMessage(recipients, channel, data, policy);
+    }
+
+    /**
+     * Send a message to the specified clients on a plugin channel. The payload
+     * is copied once into a shared read-only buffer and each recipient's packet
+     * wraps a duplicate of it, so the data buffer can be reused by the caller
+     * as soon as this method returns.
+     * 
+     * <p>Unlike {@link #sendMessage}, recipients which have not registered the
+     * channel are skipped rather than causing an exception to be thrown, so
+     * {@link ChannelPolicy#DISPATCH} behaves like
+     * {@link ChannelPolicy#DISPATCH_IF_REGISTERED}.</p>
+     * 
+     * @param recipients Recipients to send to
+     * @param channel Channel to send, must not be a reserved channel name
+     * @param data
+     * @param policy
+     * @return number of clients the message was dispatched to
+     */
+    public static int multicastMessage(Iterable<EntityPlayerMP> recipients, String channel, PacketBuffer data, ChannelPolicy policy)
+    {
+        if (ServerPluginChannels.instance != null)
+        {
+            return ServerPluginChannels.instance.multicast(recipients, channel, data, policy);
+        }
+
+        return 0;
+    }
+
+    private static List<EntityPlayerMP> getPlayers()
+    {
+        MinecraftServer server = ServerPluginChannels.instance != null ? ServerPluginChannels.instance.server : null;
+        if (server == null || server.getPlayerList() == null)
+        {
+            return Collections.<EntityPlayerMP>emptyList();
+        }
+
+        return new ArrayList<EntityPlayerMP>(server.getPlayerList().getPlayers());
+    }
+
+    /**
+     * @param recipients
+     * @param channel
+     * @param data
+     * @param policy
+     */
+    private int multicast(Iterable<EntityPlayerMP> recipients, String channel, PacketBuffer data, ChannelPolicy policy)
+    {
+        if (!PluginChannels.isValidChannelName(channel))
+        {
+            throw new RuntimeException("Invalid channel name specified"); 
+        }
+
+        ByteBuf shared = null;
+        int sent = 0;
+        for (EntityPlayerMP recipient : recipients)
+        {
+            if (recipient == null || !policy.allows(this, recipient, channel))
+            {
+                continue;
+            }
+
+            if (shared == null)
+            {
+                shared = Unpooled.copiedBuffer(data).asReadOnly();
+            }
+
+            // Writing the packet consumes the buffer, so each recipient gets its own indices
+            if (ServerPluginChannels.dispatch(recipient, new SPacketCustomPayload(channel, new PacketBuffer(shared.duplicate()))))
+            {
+                sent++;
+            }
+        }
+
+        return sent;
+    }
+
     /**
      * @param recipient
      * @param payload
@@ -255,7 +704,15 @@ public class ServerPluginChannels extends PluginChannels<ServerPluginChannelList
         {
             if (recipient != null && recipient.connection != null)
             {
+                // Read the length first, the buffer is consumed when the packet is encoded
+                int length = payload.getBufferData().readableBytes();
                 recipient.connection.sendPacket(payload);
+
+                // Batched messages are recorded against their own channels when they are queued
+                if (NetworkMetrics.ENABLED && !PluginChannels.CHANNEL_BATCH.equals(payload.getChannelName()))
+                {
+                    NetworkMetrics.onChannelMessageSent(payload.getChannelName(), length);
+                }
                 return true;
             }
         }
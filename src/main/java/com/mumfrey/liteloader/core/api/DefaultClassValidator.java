@@ -5,7 +5,14 @@
  */
 package com.mumfrey.liteloader.core.api;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
 
 import com.mumfrey.liteloader.api.ModClassValidator;
 
@@ -13,12 +20,24 @@ public class DefaultClassValidator<T> implements ModClassValidator
 {
     private final Class<T> superClass;
 
+    /**
+     * Internal name of the superclass, for bytecode checks
+     */
+    private final String superClassRef;
+
     private final List<String> supportedPrefixes;
 
+    /**
+     * Results of bytecode hierarchy checks by internal name, so that shared
+     * supertypes are only read once
+     */
+    private final Map<String, Boolean> hierarchyCache = new HashMap<String, Boolean>();
+
     public DefaultClassValidator(Class<T> superClass, List<String> supportedPrefixes)
     {
         this.supportedPrefixes = supportedPrefixes;
         this.superClass = superClass;
+        this.superClassRef = superClass.getName().replace('.', '/');
     }
 
     @Override
@@ -38,6 +57,107 @@ public class DefaultClassValidator<T> implements ModClassValidator
                 && !candidateClass.isInterface());
     }
 
+    /**
+     * Check, using only the class header read from the class bytes, whether
+     * the specified class could be a valid mod class. This doesn't load or
+     * transform the class so it can be used to rule out classes before calling
+     * {@link #validateClass}. Returns true if the class might be valid, which
+     * includes the case where the hierarchy can't be read.
+     * 
+     * @param classLoader Class loader to read class bytes from
+     * @param className Binary name of the candidate class
+     */
+    public synchronized boolean validateClassBytes(ClassLoader classLoader, String className)
+    {
+        ClassReader classReader = DefaultClassValidator.readClass(classLoader, className.replace('.', '/'));
+        if (classReader == null)
+        {
+            return true;
+        }
+
+        if ((classReader.getAccess() & Opcodes.ACC_INTERFACE) != 0 || this.superClassRef.equals(classReader.getClassName()))
+        {
+            return false;
+        }
+
+        return this.isAssignableFrom(classLoader, classReader);
+    }
+
+    private boolean isAssignableFrom(ClassLoader classLoader, ClassReader classReader)
+    {
+        if (this.isAssignableFrom(classLoader, classReader.getSuperName()))
+        {
+            return true;
+        }
+
+        for (String interfaceName : classReader.getInterfaces())
+        {
+            if (this.isAssignableFrom(classLoader, interfaceName))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isAssignableFrom(ClassLoader classLoader, String typeRef)
+    {
+        if (typeRef == null || typeRef.startsWith("java/"))
+        {
+            return false;
+        }
+
+        if (this.superClassRef.equals(typeRef))
+        {
+            return true;
+        }
+
+        Boolean cached = this.hierarchyCache.get(typeRef);
+        if (cached != null)
+        {
+            return cached.booleanValue();
+        }
+
+        // Guard against circular hierarchies in malformed classes
+        this.hierarchyCache.put(typeRef, Boolean.FALSE);
+
+        ClassReader classReader = DefaultClassValidator.readClass(classLoader, typeRef);
+        boolean result = classReader == null || this.isAssignableFrom(classLoader, classReader);
+        this.hierarchyCache.put(typeRef, Boolean.valueOf(result));
+        return result;
+    }
+
+    /**
+     * Read the class header without defining or transforming the class,
+     * returns null if the class bytes are not available
+     */
+    private static ClassReader readClass(ClassLoader classLoader, String typeRef)
+    {
+        InputStream stream = classLoader.getResourceAsStream(typeRef + ".class");
+        if (stream == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new ClassReader(stream);
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+        finally
+        {
+            try
+            {
+                stream.close();
+            }
+            catch (IOException ex) {}
+        }
+    }
+
     private static boolean startsWithAny(String string, List<String> candidates)
     {
         for (String candidate : candidates)
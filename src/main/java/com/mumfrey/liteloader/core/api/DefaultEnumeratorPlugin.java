@@ -162,6 +162,13 @@ public class DefaultEnumeratorPlugin implements EnumeratorPlugin
             return null;
         }
 
+        // Rule out classes using only their bytecode so that we don't define (and
+        // run the transformer chain on) classes which can't possibly be mods
+        if (validator instanceof DefaultClassValidator && !((DefaultClassValidator<?>)validator).validateClassBytes(classLoader, className))
+        {
+            return null;
+        }
+
         try
         {
             Class<?> candidateClass = classLoader.loadClass(className);
@@ -0,0 +1,401 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core.api;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
+
+/**
+ * On-disk cache of the information gathered from mod containers during
+ * discovery: the manifest attributes, the raw mod metadata and the class
+ * names in each container. Entries are keyed by path and validated against
+ * the file size and modification time (and optionally a hash of the file), so
+ * containers which did not change since the last launch don't need to be
+ * opened at all.
+ *
+ * <p>The cache is disabled until {@link #init} is called, so containers which
+ * are inspected outside of the file enumerator modules are unaffected.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class DiscoveryCache
+{
+    /**
+     * Format version, caches with a different version are discarded
+     */
+    private static final int VERSION = 1;
+
+    private static final String FILENAME = "liteloader.discovery.json";
+
+    /**
+     * Set to false to disable the cache completely
+     */
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("liteloader.discovery.cache", "true"));
+
+    /**
+     * Set to true to additionally validate entries using a hash of the file
+     * contents, slower but catches files replaced without changing size or
+     * timestamp.
+     */
+    private static final boolean VERIFY_HASH = Boolean.parseBoolean(System.getProperty("liteloader.discovery.cache.hash", "false"));
+
+    private static final Gson gson = new GsonBuilder().create();
+
+    private static volatile DiscoveryCache instance;
+
+    /**
+     * Serialised form of the cache file
+     */
+    static class CacheFile implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @SerializedName("version")
+        int version;
+
+        @SerializedName("entries")
+        List<Entry> entries;
+    }
+
+    /**
+     * Cached information for a single container, each piece of information is
+     * only valid once it has been read at least once.
+     */
+    public static class Entry implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @SerializedName("path")
+        private String path;
+
+        @SerializedName("size")
+        private long size;
+
+        @SerializedName("lastModified")
+        private long lastModified;
+
+        @SerializedName("hash")
+        private String hash;
+
+        @SerializedName("manifestRead")
+        private boolean manifestRead;
+
+        @SerializedName("manifest")
+        private Map<String, String> manifestAttributes;
+
+        @SerializedName("metaDataRead")
+        private boolean metaDataRead;
+
+        @SerializedName("metaData")
+        private String metaData;
+
+        @SerializedName("classNames")
+        private List<String> classNames;
+
+        Entry()
+        {
+        }
+
+        Entry(String path, long size, long lastModified, String hash)
+        {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        boolean matches(long size, long lastModified)
+        {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        public boolean hasManifestAttributes()
+        {
+            return this.manifestRead;
+        }
+
+        /**
+         * Get the manifest main attributes, null if the container has no
+         * manifest
+         */
+        public Map<String, String> getManifestAttributes()
+        {
+            return this.manifestAttributes;
+        }
+
+        public void setManifestAttributes(Map<String, String> manifestAttributes)
+        {
+            this.manifestAttributes = manifestAttributes;
+            this.manifestRead = true;
+            DiscoveryCache.instance.markDirty();
+        }
+
+        public boolean hasMetaData()
+        {
+            return this.metaDataRead;
+        }
+
+        /**
+         * Get the raw mod metadata, null if the container has no metadata
+         */
+        public String getMetaData()
+        {
+            return this.metaData;
+        }
+
+        public void setMetaData(String metaData)
+        {
+            this.metaData = metaData;
+            this.metaDataRead = true;
+            DiscoveryCache.instance.markDirty();
+        }
+
+        public boolean hasClassNames()
+        {
+            return this.classNames != null;
+        }
+
+        public List<String> getClassNames()
+        {
+            return new ArrayList<String>(this.classNames);
+        }
+
+        public void setClassNames(List<String> classNames)
+        {
+            this.classNames = new ArrayList<String>(classNames);
+            DiscoveryCache.instance.markDirty();
+        }
+    }
+
+    private final File cacheFile;
+
+    /**
+     * Entries loaded from disk or created during this run, by path
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Paths which were requested during this run, only these are written back
+     * so that entries for removed containers are pruned
+     */
+    private final Set<String> touched = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private volatile boolean dirty;
+
+    private DiscoveryCache(File cacheFile)
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Enable the cache, reading any existing cache from the specified folder
+     */
+    public static synchronized void init(File configFolder)
+    {
+        if (DiscoveryCache.instance != null || !DiscoveryCache.ENABLED)
+        {
+            return;
+        }
+
+        DiscoveryCache cache = new DiscoveryCache(new File(configFolder, DiscoveryCache.FILENAME));
+        cache.read();
+        DiscoveryCache.instance = cache;
+    }
+
+    /**
+     * Get the valid cache entry for the specified container, creating a new
+     * empty entry if the container is not cached or has changed. Returns null
+     * if the cache is not enabled or the container is a directory.
+     */
+    public static Entry getEntry(File file)
+    {
+        DiscoveryCache cache = DiscoveryCache.instance;
+        if (cache == null || !file.isFile())
+        {
+            return null;
+        }
+
+        return cache.get(file);
+    }
+
+    /**
+     * Write the cache to disk if anything changed
+     */
+    public static synchronized void save()
+    {
+        if (DiscoveryCache.instance != null)
+        {
+            DiscoveryCache.instance.write();
+        }
+    }
+
+    private Entry get(File file)
+    {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        this.touched.add(path);
+
+        Entry entry = this.entries.get(path);
+        String hash = null;
+        if (entry != null && entry.matches(size, lastModified))
+        {
+            if (!DiscoveryCache.VERIFY_HASH)
+            {
+                return entry;
+            }
+
+            hash = DiscoveryCache.hash(file);
+            if (hash != null && hash.equals(entry.hash))
+            {
+                return entry;
+            }
+        }
+        else if (DiscoveryCache.VERIFY_HASH)
+        {
+            hash = DiscoveryCache.hash(file);
+        }
+
+        entry = new Entry(path, size, lastModified, hash);
+        this.entries.put(path, entry);
+        this.markDirty();
+        return entry;
+    }
+
+    void markDirty()
+    {
+        this.dirty = true;
+    }
+
+    private void read()
+    {
+        if (!this.cacheFile.isFile())
+        {
+            return;
+        }
+
+        Reader reader = null;
+        try
+        {
+            reader = new InputStreamReader(new FileInputStream(this.cacheFile), Charsets.UTF_8);
+            CacheFile cached = DiscoveryCache.gson.fromJson(reader, CacheFile.class);
+            if (cached == null || cached.version != DiscoveryCache.VERSION || cached.entries == null)
+            {
+                LiteLoaderLogger.info("Discarding outdated discovery cache %s", this.cacheFile);
+                return;
+            }
+
+            for (Entry entry : cached.entries)
+            {
+                if (entry != null && entry.path != null)
+                {
+                    this.entries.put(entry.path, entry);
+                }
+            }
+
+            LiteLoaderLogger.info("Read %d entries from discovery cache %s", this.entries.size(), this.cacheFile);
+        }
+        catch (IOException ex)
+        {
+            LiteLoaderLogger.warning(ex, "Could not read discovery cache %s", this.cacheFile);
+        }
+        catch (JsonParseException ex)
+        {
+            LiteLoaderLogger.warning("Discarding corrupt discovery cache %s: %s", this.cacheFile, ex.getMessage());
+        }
+        finally
+        {
+            try
+            {
+                if (reader != null) reader.close();
+            }
+            catch (IOException ex) {}
+        }
+    }
+
+    private void write()
+    {
+        if (!this.dirty)
+        {
+            return;
+        }
+
+        CacheFile cached = new CacheFile();
+        cached.version = DiscoveryCache.VERSION;
+        cached.entries = new ArrayList<Entry>();
+        for (String path : this.touched)
+        {
+            Entry entry = this.entries.get(path);
+            if (entry != null)
+            {
+                cached.entries.add(entry);
+            }
+        }
+
+        File tempFile = new File(this.cacheFile.getParentFile(), this.cacheFile.getName() + ".tmp");
+        Writer writer = null;
+        try
+        {
+            writer = new OutputStreamWriter(new FileOutputStream(tempFile), Charsets.UTF_8);
+            DiscoveryCache.gson.toJson(cached, writer);
+            writer.close();
+            writer = null;
+
+            if ((this.cacheFile.exists() && !this.cacheFile.delete()) || !tempFile.renameTo(this.cacheFile))
+            {
+                throw new IOException("Could not replace " + this.cacheFile);
+            }
+
+            this.dirty = false;
+        }
+        catch (IOException ex)
+        {
+            LiteLoaderLogger.warning(ex, "Could not write discovery cache %s", this.cacheFile);
+        }
+        finally
+        {
+            try
+            {
+                if (writer != null) writer.close();
+            }
+            catch (IOException ex) {}
+        }
+    }
+
+    private static String hash(File file)
+    {
+        try
+        {
+            return Files.hash(file, Hashing.sha1()).toString();
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+}
@@ -15,6 +15,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import com.google.common.base.Charsets;
 import com.mumfrey.liteloader.api.EnumeratorModule;
@@ -34,6 +37,13 @@ import net.minecraft.launchwrapper.LaunchClassLoader;
 
 public abstract class EnumeratorModuleFiles implements FilenameFilter, EnumeratorModule
 {
+    /**
+     * Number of threads to use when inspecting candidate files, 1 to inspect
+     * files serially on the calling thread
+     */
+    private static final int DISCOVERY_THREADS = Math.max(1, Integer.getInteger("liteloader.discovery.threads",
+            Math.min(8, Runtime.getRuntime().availableProcessors() * 2)));
+
     public static class ContainerEnvironment implements Iterable<ContainerEnvironment.Candidate>
     {
         static class Candidate
@@ -120,6 +130,7 @@ public abstract class EnumeratorModuleFiles implements FilenameFilter, Enumerato
     @Override
     public void init(LoaderEnvironment environment, LoaderProperties properties)
     {
+        DiscoveryCache.init(environment.getCommonConfigFolder());
     }
 
     /**
@@ -159,17 +170,137 @@ public abstract class EnumeratorModuleFiles implements FilenameFilter, Enumerato
     }
 
     /**
-     * Search the folder for (potentially) valid files
+     * Candidate file which was inspected by an {@link InspectionTask}
      */
-    protected void findValidFiles(ModularEnumerator enumerator)
+    static class InspectedFile
     {
-        for (File file : this.getFiles())
+        final LoadableFile candidateFile;
+
+        final String metaData;
+
+        InspectedFile(LoadableFile candidateFile, String metaData)
+        {
+            this.candidateFile = candidateFile;
+            this.metaData = metaData;
+        }
+
+        /**
+         * Read the manifest and (where the file could be a LiteLoader
+         * container) the mod metadata for the specified file
+         */
+        static InspectedFile inspect(File file, boolean forceInjection)
         {
             LoadableFile candidateFile = new LoadableFile(file);
-            candidateFile.setForceInjection(this.forceInjection());
+            candidateFile.setForceInjection(forceInjection);
+
+            String metaData = null;
+            Set<String> modSystems = candidateFile.getModSystems();
+            if (modSystems.isEmpty() || modSystems.contains("LiteLoader"))
+            {
+                metaData = candidateFile.getFileContents(LoadableMod.METADATA_FILENAME, Charsets.UTF_8);
+            }
+
+            return new InspectedFile(candidateFile, metaData);
+        }
+    }
+
+    /**
+     * Fork-join task which inspects a range of candidate files, the results
+     * are stored by index so that the caller can process them in the original
+     * file order regardless of which file finished first.
+     */
+    static class InspectionTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final File[] files;
+
+        private final InspectedFile[] results;
+
+        private final Exception[] errors;
+
+        private final int from;
+
+        private final int to;
+
+        private final boolean forceInjection;
+
+        InspectionTask(File[] files, InspectedFile[] results, Exception[] errors, int from, int to, boolean forceInjection)
+        {
+            this.files = files;
+            this.results = results;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+            this.forceInjection = forceInjection;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from > 1)
+            {
+                int mid = (this.from + this.to) >>> 1;
+                ForkJoinTask.invokeAll(new InspectionTask(this.files, this.results, this.errors, this.from, mid, this.forceInjection),
+                        new InspectionTask(this.files, this.results, this.errors, mid, this.to, this.forceInjection));
+                return;
+            }
+
+            for (int index = this.from; index < this.to; index++)
+            {
+                try
+                {
+                    this.results[index] = InspectedFile.inspect(this.files[index], this.forceInjection);
+                }
+                catch (Exception ex)
+                {
+                    this.errors[index] = ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Search the folder for (potentially) valid files. The files are opened
+     * and inspected in parallel but the results are then merged serially in
+     * file order, so ordering and newest-version selection are unaffected.
+     */
+    protected void findValidFiles(ModularEnumerator enumerator)
+    {
+        File[] files = this.getFiles();
+        InspectedFile[] results = new InspectedFile[files.length];
+        Exception[] errors = new Exception[files.length];
+        InspectionTask task = new InspectionTask(files, results, errors, 0, files.length, this.forceInjection());
+
+        if (files.length > 1 && EnumeratorModuleFiles.DISCOVERY_THREADS > 1)
+        {
+            ForkJoinPool pool = new ForkJoinPool(Math.min(EnumeratorModuleFiles.DISCOVERY_THREADS, files.length));
             try
             {
-                this.inspectFile(enumerator, candidateFile);
+                pool.invoke(task);
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        else
+        {
+            task.compute();
+        }
+
+        for (int index = 0; index < files.length; index++)
+        {
+            if (errors[index] != null)
+            {
+                LiteLoaderLogger.warning(errors[index], "An error occurred whilst inspecting %s", files[index]);
+                continue;
+            }
+
+            LoadableFile candidateFile = results[index].candidateFile;
+            try
+            {
+                this.inspectFile(enumerator, candidateFile, results[index].metaData);
             }
             catch (Exception ex)
             {
@@ -186,10 +317,23 @@ public abstract class EnumeratorModuleFiles implements FilenameFilter, Enumerato
      * @param candidateFile
      */
     protected void inspectFile(ModularEnumerator enumerator, LoadableFile candidateFile)
+    {
+        this.inspectFile(enumerator, candidateFile, candidateFile.getFileContents(LoadableMod.METADATA_FILENAME, Charsets.UTF_8));
+    }
+
+    /**
+     * Check whether a particular file is valid, and add it to the candiates
+     * list if it appears to be acceptable.
+     * 
+     * @param enumerator
+     * @param candidateFile
+     * @param metaData Metadata read from the file, or null if the file has no
+     *      metadata
+     */
+    protected void inspectFile(ModularEnumerator enumerator, LoadableFile candidateFile, String metaData)
     {
         if (this.isValidFile(enumerator, candidateFile))
         {
-            String metaData = candidateFile.getFileContents(LoadableMod.METADATA_FILENAME, Charsets.UTF_8);
             if (metaData != null)
             {
                 LoadableMod<File> modFile = this.getModFile(candidateFile, metaData);
@@ -417,5 +561,7 @@ public abstract class EnumeratorModuleFiles implements FilenameFilter, Enumerato
                 LiteLoaderLogger.warning("Error encountered whilst searching in %s...", modFile);
             }
         }
+
+        DiscoveryCache.save();
     }
 }
@@ -452,7 +452,30 @@ public class LoadableModFile extends LoadableFile implements LoadableMod<File>
             return LoadableModFile.enumerateDirectory(new ArrayList<String>(), this, "", 0);
         }
 
-        return LoadableModFile.enumerateZipFile(this);
+        DiscoveryCache.Entry cached = this.getDiscoveryCacheEntry();
+        if (cached != null && cached.hasClassNames())
+        {
+            return cached.getClassNames();
+        }
+
+        try
+        {
+            List<String> classNames = this.getZipIndex().getClassNames();
+            if (cached != null)
+            {
+                cached.setClassNames(classNames);
+            }
+            return classNames;
+        }
+        catch (IOException ex)
+        {
+            return new ArrayList<String>();
+        }
+        finally
+        {
+            // Class enumeration is the last stage which needs the index
+            this.releaseZipIndex();
+        }
     }
 
     @Override
@@ -562,8 +585,6 @@ public class LoadableModFile extends LoadableFile implements LoadableMod<File>
     public static String zipEntryToString(ZipFile zip, ZipEntry entry) throws IOException
     {
         InputStream stream = null; 
-        Charset charset = Charsets.UTF_8;
-        int bomOffset = 0;
         byte[] bytes;
 
         try
@@ -576,6 +597,20 @@ public class LoadableModFile extends LoadableFile implements LoadableMod<File>
             if (stream != null) stream.close();
         }
 
+        return LoadableModFile.bytesToString(bytes);
+    }
+
+    /**
+     * Decode the supplied file contents, using the BOM to detect UTF-16 and
+     * assuming UTF-8 otherwise
+     * 
+     * @param bytes
+     */
+    public static String bytesToString(byte[] bytes)
+    {
+        Charset charset = Charsets.UTF_8;
+        int bomOffset = 0;
+
         if (bytes == null || bytes.length == 0) return "";
 
         // Handle unicode by looking for BOM
@@ -7,6 +7,8 @@ package com.mumfrey.liteloader.core.event;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -17,7 +19,14 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.objectweb.asm.ClassReader;
@@ -48,7 +57,6 @@ import com.mumfrey.liteloader.transformers.ByteCodeUtilities;
 import com.mumfrey.liteloader.util.SortableValue;
 import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
 
-import net.minecraft.launchwrapper.IClassTransformer;
 import net.minecraft.launchwrapper.Launch;
 
 /**
@@ -63,9 +71,13 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
 {
     private static final long serialVersionUID = 1L;
 
-    private static final int MAX_UNCOLLECTED_CLASSES = 5000;
-
-    private static int uncollectedHandlerLists = 0;
+    /**
+     * Default time (in milliseconds) which a list must remain unchanged after
+     * a late mutation before it is re-baked in the background, 0 disables
+     * background re-baking so that late mutations are baked on the next call
+     * to {@link #all}.
+     */
+    private static final int DEFAULT_REBAKE_DELAY = Integer.getInteger("liteloader.handlers.rebakeDelay", 0);
 
     /**
      * Enum for logic operations supported between handlers which return bool
@@ -148,15 +160,35 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
 
     /**
      * Current baked handler list, we cook them at gas mark 5 for 30 minutes in
-     * a disposable classloader whic also handles the transformation for us.
+     * a disposable classloader which also handles the transformation for us.
+     * Generated classes are shared between all lists with the same shape so
+     * the oven only gets switched on for shapes we haven't seen before.
      */
-    private BakedHandlerList<T> bakedHandler;
+    private volatile BakedHandlerList<T> bakedHandler;
 
     /**
      * True to sort the list when baking 
      */
     private boolean sorted = true;
 
+    /**
+     * Time in milliseconds the list must be stable for before a late mutation
+     * is re-baked in the background, see {@link #setRebakeDelay}
+     */
+    private int rebakeDelay = HandlerList.DEFAULT_REBAKE_DELAY;
+
+    /**
+     * True once the list has been baked for the first time, mutations after
+     * this point are considered "late"
+     */
+    private boolean baked;
+
+    /**
+     * Incremented whenever the baked list is invalidated, used to discard
+     * background bakes which were overtaken by further mutations
+     */
+    private int version;
+
     /**
      * @param type
      */
@@ -211,6 +243,27 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
         this.invalidate();
     }
 
+    /**
+     * Get the time in milliseconds the list must be stable for before late
+     * mutations are re-baked in the background
+     */
+    public int getRebakeDelay()
+    {
+        return this.rebakeDelay;
+    }
+
+    /**
+     * Set the time in milliseconds the list must be stable for before late
+     * mutations are re-baked in the background. When positive, mutations made
+     * after the list was first baked are dispatched immediately from an array
+     * overlay and only baked into bytecode once the list stops changing. Set
+     * to 0 to always bake synchronously on the next call to {@link #all}.
+     */
+    public void setRebakeDelay(int rebakeDelay)
+    {
+        this.rebakeDelay = Math.max(0, rebakeDelay);
+    }
+
     @SuppressWarnings("unchecked")
     protected List<T> getSortedList()
     {
@@ -251,26 +304,66 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
     @Override
     public T all()
     {
-        if (this.bakedHandler == null)
+        BakedHandlerList<T> bakedHandler = this.bakedHandler;
+        if (bakedHandler == null)
         {
             this.bake();
+            bakedHandler = this.bakedHandler;
         }
 
-        return this.bakedHandler.get();
+        return bakedHandler.get();
     }
 
     /**
-     * Bake the current handler list
+     * Bake the current handler list using the active backend, or install an
+     * overlay and schedule a background bake if this is a late mutation
      */
     protected void bake()
     {
-        HandlerListClassLoader<T> classLoader = new HandlerListClassLoader<T>(this.type, this.logicOp, this.getDecorator());
-        this.bakedHandler = classLoader.newHandler(this);
-        try
+        List<T> sortedList = this.getSortedList();
+        HandlerListBackend backend = HandlerListBackend.getActive();
+
+        if (this.baked && this.rebakeDelay > 0 && backend != HandlerListBackend.METHOD_HANDLE)
+        {
+            BakedHandlerList<T> overlay = HandlerListBackend.METHOD_HANDLE.newHandler(this.type, this.logicOp, this.getDecorator(), sortedList);
+            synchronized (this)
+            {
+                this.bakedHandler = overlay;
+                BackgroundBaker.schedule(this, overlay, new ArrayList<T>(sortedList), this.version);
+            }
+            return;
+        }
+
+        this.bakedHandler = backend.newHandler(this.type, this.logicOp, this.getDecorator(), sortedList);
+        this.baked = true;
+    }
+
+    /**
+     * Callback from the background baker, replaces the overlay with the
+     * supplied baked list as long as the list didn't change in the meantime
+     */
+    void onBackgroundBake(BakedHandlerList<T> overlay, List<T> sortedList, int version)
+    {
+        if (!this.isCurrent(overlay, version))
+        {
+            return;
+        }
+
+        // Bake outside the lock so that mutations on the main thread are never held up
+        BakedHandlerList<T> bakedHandler = HandlerListBackend.getActive().newHandler(this.type, this.logicOp, this.getDecorator(), sortedList);
+
+        synchronized (this)
         {
-            classLoader.close();
+            if (this.isCurrent(overlay, version))
+            {
+                this.bakedHandler = bakedHandler;
+            }
         }
-        catch (IOException ex) {}
+    }
+
+    private synchronized boolean isCurrent(BakedHandlerList<T> overlay, int version)
+    {
+        return this.version == version && this.bakedHandler == overlay;
     }
 
     protected IHandlerListDecorator<T> getDecorator()
@@ -289,12 +382,10 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
             return;
         }
 
-        this.bakedHandler = null;
-        HandlerList.uncollectedHandlerLists++;
-        if (HandlerList.uncollectedHandlerLists > HandlerList.MAX_UNCOLLECTED_CLASSES)
+        synchronized (this)
         {
-            System.gc();
-            HandlerList.uncollectedHandlerLists = 0;
+            this.bakedHandler = null;
+            this.version++;
         }
     }
 
@@ -574,6 +665,60 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
         public abstract BakedHandlerList<T> populate(List<T> listeners);
     }
 
+    /**
+     * Bakes lists which received late mutations on a background thread once
+     * they have been stable for their configured delay. Mutations in the
+     * meantime bump the list version, so stale bakes are simply discarded.
+     * 
+     * @author Adam Mummery-Smith
+     */
+    static final class BackgroundBaker
+    {
+        private static ScheduledExecutorService executor;
+
+        private BackgroundBaker()
+        {
+        }
+
+        static <T> void schedule(final HandlerList<T> list, final BakedHandlerList<T> overlay, final List<T> sortedList, final int version)
+        {
+            BackgroundBaker.getExecutor().schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        list.onBackgroundBake(overlay, sortedList, version);
+                    }
+                    catch (Throwable th)
+                    {
+                        LiteLoaderLogger.warning(th, "Background bake of %s handler list failed, continuing with overlay", list.type.getSimpleName());
+                    }
+                }
+            }, list.rebakeDelay, TimeUnit.MILLISECONDS);
+        }
+
+        private static synchronized ScheduledExecutorService getExecutor()
+        {
+            if (BackgroundBaker.executor == null)
+            {
+                BackgroundBaker.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "LiteLoader HandlerList Baker");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+
+            return BackgroundBaker.executor;
+        }
+    }
+
     /**
      * Exception to throw when failing to bake a handler list
      * 
@@ -590,7 +735,64 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
     }
 
     /**
-     * ClassLoader which generates the baked handler list
+     * Shape of a generated handler list class. Since the handlers themselves
+     * are supplied to the baked list via <tt>populate</tt>, two lists with the
+     * same interface, logic op, size and decorator can share the same class.
+     * 
+     * @author Adam Mummery-Smith
+     */
+    static final class BakedShape
+    {
+        private final Class<?> type;
+
+        private final ReturnLogicOp logicOp;
+
+        private final int size;
+
+        private final Class<?> decoratorType;
+
+        private final int hash;
+
+        BakedShape(Class<?> type, ReturnLogicOp logicOp, int size, IHandlerListDecorator<?> decorator)
+        {
+            this.type = type;
+            this.logicOp = logicOp;
+            this.size = size;
+            this.decoratorType = decorator != null ? decorator.getClass() : null;
+            this.hash = Arrays.hashCode(new Object[] { type, logicOp, size, this.decoratorType });
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this) return true;
+            if (!(obj instanceof BakedShape)) return false;
+
+            BakedShape other = (BakedShape)obj;
+            return this.type == other.type
+                    && this.logicOp == other.logicOp
+                    && this.size == other.size
+                    && this.decoratorType == other.decoratorType;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hash;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[%s x%d]", this.type.getSimpleName(), this.logicOp, this.size);
+        }
+    }
+
+    /**
+     * ClassLoader which generates the baked handler list. Each generated class
+     * gets its own loader so that the class can be unloaded once no baked list
+     * refers to it any more, but classes are cached by {@link BakedShape} and
+     * only regenerated once the cached class has actually been collected.
      * 
      * @author Adam Mummery-Smith
      * @param <T>
@@ -606,7 +808,20 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
         /**
          * Unique index number, just to ensure no name clashes
          */
-        private static int handlerIndex;
+        private static final AtomicInteger handlerIndex = new AtomicInteger();
+
+        /**
+         * Generated classes by shape, the references are soft so that classes
+         * for shapes which are no longer in use can be unloaded by the GC when
+         * it sees fit rather than when we tell it to.
+         */
+        private static final Map<BakedShape, Reference<Class<?>>> bakedClasses = new ConcurrentHashMap<BakedShape, Reference<Class<?>>>();
+
+        /**
+         * Template and interface class bytes, transformed only once and parsed
+         * into a fresh tree for each class we generate
+         */
+        private static final Map<String, byte[]> classBytes = new ConcurrentHashMap<String, byte[]>();
 
         /**
          * Interface type which this classloader is generating handler for 
@@ -632,57 +847,115 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
         /**
          * Size of the handler list
          */
-        private int size;
+        private final int size;
 
         /**
          * @param type
          * @param logicOp
+         * @param decorator
+         * @param size
          */
-        HandlerListClassLoader(Class<T> type, ReturnLogicOp logicOp, IHandlerListDecorator<T> decorator)
+        HandlerListClassLoader(Class<T> type, ReturnLogicOp logicOp, IHandlerListDecorator<T> decorator, int size)
         {
             super(new URL[0], Launch.classLoader);
             this.type = type;
             this.typeRef = type.getName().replace('.', '/');
             this.logicOp = logicOp;
             this.decorator = decorator;
+            this.size = size;
+        }
+
+        /**
+         * Create and return a new baked handler list, using a cached class for
+         * the list's shape where one is available
+         */
+        static <T> BakedHandlerList<T> newHandler(Class<T> type, ReturnLogicOp logicOp, IHandlerListDecorator<T> decorator, List<T> sortedList)
+        {
+            if (decorator != null)
+            {
+                decorator.prepare(sortedList);
+            }
+
+            Class<BakedHandlerList<T>> handlerClass = HandlerListClassLoader.getHandlerClass(type, logicOp, decorator, sortedList.size());
+
+            try
+            {
+                // Create an instance of the class, populate the entries from the supplied list and return it
+                BakedHandlerList<T> handlerList = HandlerListClassLoader.createInstance(handlerClass, decorator);
+                return handlerList.populate(sortedList);
+            }
+            catch (InstantiationException ex)
+            {
+                throw new BakingFailedException(ex);
+            }
         }
 
         /**
-         * Create and return a new baked handler list
+         * Get the generated class for the specified shape, generating it if the
+         * shape has not been seen before or the previous class was collected
          */
         @SuppressWarnings("unchecked")
-        public BakedHandlerList<T> newHandler(HandlerList<T> list)
+        private static <T> Class<BakedHandlerList<T>> getHandlerClass(Class<T> type, ReturnLogicOp logicOp, IHandlerListDecorator<T> decorator,
+                int size)
         {
-            this.size = list.size();
-            List<T> sortedList = list.getSortedList();
+            BakedShape shape = new BakedShape(type, logicOp, size, decorator);
+            Reference<Class<?>> ref = HandlerListClassLoader.bakedClasses.get(shape);
+            Class<?> handlerClass = ref != null ? ref.get() : null;
+            if (handlerClass != null)
+            {
+                return (Class<BakedHandlerList<T>>)handlerClass;
+            }
 
-            if (this.decorator != null)
+            synchronized (HandlerListClassLoader.bakedClasses)
             {
-                this.decorator.prepare(sortedList);
+                ref = HandlerListClassLoader.bakedClasses.get(shape);
+                handlerClass = ref != null ? ref.get() : null;
+                if (handlerClass == null)
+                {
+                    handlerClass = HandlerListClassLoader.generateClass(type, logicOp, decorator, size);
+                    HandlerListClassLoader.expungeCollectedClasses();
+                    HandlerListClassLoader.bakedClasses.put(shape, new SoftReference<Class<?>>(handlerClass));
+                }
             }
 
-            Class<BakedHandlerList<T>> handlerClass = null;
+            return (Class<BakedHandlerList<T>>)handlerClass;
+        }
+
+        private static <T> Class<?> generateClass(Class<T> type, ReturnLogicOp logicOp, IHandlerListDecorator<T> decorator, int size)
+        {
+            HandlerListClassLoader<T> classLoader = new HandlerListClassLoader<T>(type, logicOp, decorator, size);
 
             try
             {
                 // Inflect the class name and attempt to generate the class
-                String className = HandlerListClassLoader.getNextClassName(Obf.HandlerList.name, this.type.getSimpleName());
-                handlerClass = (Class<BakedHandlerList<T>>)this.loadClass(className);
+                String className = HandlerListClassLoader.getNextClassName(Obf.HandlerList.name, type.getSimpleName());
+                return classLoader.loadClass(className);
             }
             catch (ClassNotFoundException ex)
             {
                 throw new BakingFailedException(ex);
             }
-
-            try
+            finally
             {
-                // Create an instance of the class, populate the entries from the supplied list and return it
-                BakedHandlerList<T> handlerList = this.createInstance(handlerClass);
-                return handlerList.populate(sortedList);
+                try
+                {
+                    classLoader.close();
+                }
+                catch (IOException ex) {}
             }
-            catch (InstantiationException ex)
+        }
+
+        /**
+         * Remove map entries whose classes have already been collected
+         */
+        private static void expungeCollectedClasses()
+        {
+            for (Iterator<Reference<Class<?>>> iter = HandlerListClassLoader.bakedClasses.values().iterator(); iter.hasNext();)
             {
-                throw new BakingFailedException(ex);
+                if (iter.next().get() == null)
+                {
+                    iter.remove();
+                }
             }
         }
 
@@ -690,17 +963,20 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
          * Create an instance of the baked class
          * 
          * @param handlerClass Baked HandlerList class
+         * @param decorator Decorator to delegate instance creation to, can be
+         *      null
          * @return new instance of the Baked HandlerList class 
          * @throws InstantiationException if the handler can't be created for
          *      some reason
          */
-        private BakedHandlerList<T> createInstance(Class<BakedHandlerList<T>> handlerClass) throws InstantiationException
+        private static <T> BakedHandlerList<T> createInstance(Class<BakedHandlerList<T>> handlerClass, IHandlerListDecorator<T> decorator)
+                throws InstantiationException
         {
             try
             {
-                if (this.decorator != null)
+                if (decorator != null)
                 {
-                    return this.decorator.createInstance(handlerClass);
+                    return decorator.createInstance(handlerClass);
                 }
 
                 Constructor<BakedHandlerList<T>> ctor = handlerClass.getDeclaredConstructor();
@@ -724,19 +1000,15 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
             try
             {
                 // Read the basic class template
-                byte[] bytes = ByteCodeUtilities.applyTransformers(this.getTemplate().name,
-                        Launch.classLoader.getClassBytes(this.getTemplate().name));
-                ClassReader classReader = new ClassReader(bytes);
-                ClassNode classNode = new ClassNode();
-                classReader.accept(classNode, ClassReader.EXPAND_FRAMES);
+                ClassNode classNode = HandlerListClassLoader.getClassNode(this.getTemplate().name);
 
                 // Apply all transformations to the class, injects our custom code 
                 this.transform(name, classNode);
 
                 // Write the class
-                ClassWriter classWriter = new ClassWriter(classReader, ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+                ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
                 classNode.accept(classWriter);
-                bytes = classWriter.toByteArray();
+                byte[] bytes = classWriter.toByteArray();
 
                 if (HandlerListClassLoader.VALIDATE)
                 {
@@ -925,15 +1197,14 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
          */
         private void injectInterfaceMethods(ClassNode classNode, String interfaceName, Set<String> generatedMethods) throws IOException
         {
-            ClassReader interfaceReader = new ClassReader(HandlerListClassLoader.getInterfaceBytes(interfaceName));
-            ClassNode interfaceNode = new ClassNode();
-            interfaceReader.accept(interfaceNode, 0);
+            ClassNode interfaceNode = HandlerListClassLoader.getClassNode(interfaceName);
 
             for (MethodNode interfaceMethod : interfaceNode.methods)
             {
                 String signature = interfaceMethod.name + interfaceMethod.desc;
                 if (generatedMethods.contains(signature)) continue;
                 generatedMethods.add(signature);
+
                 classNode.methods.add(interfaceMethod);
                 this.populateInterfaceMethod(classNode, interfaceMethod);
             }
@@ -1103,23 +1374,35 @@ public class HandlerList<T> extends LinkedList<T> implements FastIterableDeque<T
          */
         private static String getNextClassName(String baseName, String typeName)
         {
-            return String.format("%s$%s%d", baseName, typeName, HandlerListClassLoader.handlerIndex++);
+            return String.format("%s$%s%d", baseName, typeName, HandlerListClassLoader.handlerIndex.getAndIncrement());
         }
 
         /**
+         * Get a new class node for the specified template or interface class,
+         * the class is only transformed the first time it is requested. A
+         * fresh tree is read each time because the labels in a tree which has
+         * already been written can't safely be written again.
+         * 
          * @param name
          * @throws IOException
          */
-        private static byte[] getInterfaceBytes(String name) throws IOException
+        private static ClassNode getClassNode(String name) throws IOException
         {
-            byte[] bytes = Launch.classLoader.getClassBytes(name);
-
-            for (final IClassTransformer transformer : Launch.classLoader.getTransformers())
+            byte[] bytes = HandlerListClassLoader.classBytes.get(name);
+            if (bytes == null)
             {
-                bytes = transformer.transform(name, name, bytes);
+                bytes = ByteCodeUtilities.applyTransformers(name, Launch.classLoader.getClassBytes(name));
+                if (bytes == null)
+                {
+                    throw new IOException("Could not read class bytes for " + name);
+                }
+
+                HandlerListClassLoader.classBytes.put(name, bytes);
             }
 
-            return bytes;
+            ClassNode classNode = new ClassNode();
+            new ClassReader(bytes).accept(classNode, ClassReader.EXPAND_FRAMES);
+            return classNode;
         }
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core.event;
+
+import java.util.List;
+
+import com.mumfrey.liteloader.core.event.HandlerList.BakedHandlerList;
+import com.mumfrey.liteloader.core.event.HandlerList.HandlerListClassLoader;
+import com.mumfrey.liteloader.core.event.HandlerList.ReturnLogicOp;
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
+
+/**
+ * Strategy used by {@link HandlerList} to bake its current contents into an
+ * invoker. The active backend is selected once at startup using the
+ * <tt>liteloader.handlers.backend</tt> system property, which can be set to
+ * <tt>asm</tt> (the default) to generate bytecode for each list shape, or
+ * <tt>methodhandle</tt> to dispatch via MethodHandles without generating any
+ * classes per list.
+ *
+ * @author Adam Mummery-Smith
+ */
+abstract class HandlerListBackend
+{
+    /**
+     * System property used to select the backend
+     */
+    static final String PROPERTY = "liteloader.handlers.backend";
+
+    /**
+     * Generates a class for each list shape using HandlerListClassLoader
+     */
+    static final HandlerListBackend ASM = new HandlerListBackend("asm")
+    {
+        @Override
+        <T> BakedHandlerList<T> newHandler(Class<T> type, ReturnLogicOp logicOp, IHandlerListDecorator<T> decorator, List<T> sortedList)
+        {
+            return HandlerListClassLoader.newHandler(type, logicOp, decorator, sortedList);
+        }
+    };
+
+    /**
+     * Dispatches using MethodHandle chains behind a single proxy class per
+     * interface
+     */
+    static final HandlerListBackend METHOD_HANDLE = new HandlerListBackend("methodhandle")
+    {
+        @Override
+        <T> BakedHandlerList<T> newHandler(Class<T> type, ReturnLogicOp logicOp, IHandlerListDecorator<T> decorator, List<T> sortedList)
+        {
+            // Decorators which can only manipulate bytecode have to go via ASM
+            if (decorator != null && !(decorator instanceof IHandlerListInvocationDecorator))
+            {
+                return HandlerListBackend.ASM.newHandler(type, logicOp, decorator, sortedList);
+            }
+
+            if (decorator != null)
+            {
+                decorator.prepare(sortedList);
+            }
+
+            IHandlerListInvocationDecorator invocationDecorator = (IHandlerListInvocationDecorator)decorator;
+            return new MethodHandleHandlerList<T>(type, logicOp, invocationDecorator).populate(sortedList);
+        }
+    };
+
+    private static final HandlerListBackend active = HandlerListBackend.forName(System.getProperty(HandlerListBackend.PROPERTY, "asm"));
+
+    private final String name;
+
+    HandlerListBackend(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Bake the supplied (already sorted) list of handlers
+     */
+    abstract <T> BakedHandlerList<T> newHandler(Class<T> type, ReturnLogicOp logicOp, IHandlerListDecorator<T> decorator, List<T> sortedList);
+
+    @Override
+    public String toString()
+    {
+        return this.name;
+    }
+
+    /**
+     * Get the backend selected by the system property
+     */
+    static HandlerListBackend getActive()
+    {
+        return HandlerListBackend.active;
+    }
+
+    private static HandlerListBackend forName(String name)
+    {
+        if (HandlerListBackend.METHOD_HANDLE.name.equalsIgnoreCase(name))
+        {
+            LiteLoaderLogger.info("Using %s backend for baked handler lists", HandlerListBackend.METHOD_HANDLE);
+            return HandlerListBackend.METHOD_HANDLE;
+        }
+
+        if (!HandlerListBackend.ASM.name.equalsIgnoreCase(name))
+        {
+            LiteLoaderLogger.warning("Unknown handler list backend \"%s\", using %s", name, HandlerListBackend.ASM);
+        }
+
+        return HandlerListBackend.ASM;
+    }
+}
@@ -18,6 +18,11 @@ import com.mumfrey.liteloader.core.runtime.Obf;
  * Essentially a "mini plugin" for HandlerListClassLoader which allows
  * alterations of the generated bytecode.
  * 
+ * <p>Generated classes are shared between all handler lists with the same
+ * interface, logic op, size and decorator type, so decorators must not bake
+ * list-specific data into the generated bytecode. Per-list state should be
+ * supplied to the instance in {@link #createInstance} instead.</p>
+ * 
  * @author Adam Mummery-Smith
  *
  * @param <T>
@@ -0,0 +1,27 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core.event;
+
+/**
+ * Runtime counterpart to {@link IHandlerListDecorator} for backends which do
+ * not generate bytecode. Decorators which implement this interface can be used
+ * with the MethodHandle backend, decorators which don't will always be baked
+ * using ASM.
+ *
+ * @author Adam Mummery-Smith
+ */
+public interface IHandlerListInvocationDecorator
+{
+    /**
+     * Called immediately before the handler at the specified index is invoked
+     */
+    public abstract void preInvoke(int handlerIndex);
+
+    /**
+     * Called immediately after the handler at the specified index is invoked
+     */
+    public abstract void postInvoke(int handlerIndex);
+}
@@ -0,0 +1,240 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.core.event;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mumfrey.liteloader.core.event.HandlerList.BakedHandlerList;
+import com.mumfrey.liteloader.core.event.HandlerList.BakingFailedException;
+import com.mumfrey.liteloader.core.event.HandlerList.ReturnLogicOp;
+
+/**
+ * Baked handler list which dispatches to its handlers via MethodHandles
+ * instead of generated bytecode. The JVM only ever creates a single proxy
+ * class per interface so baking a list of this type does not define any new
+ * classes, at the cost of argument boxing on each invocation.
+ *
+ * @author Adam Mummery-Smith
+ *
+ * @param <T>
+ */
+class MethodHandleHandlerList<T> extends BakedHandlerList<T> implements InvocationHandler
+{
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * Interface type which this list dispatches
+     */
+    private final Class<T> type;
+
+    /**
+     * Logic operation to apply when running a callback with a boolean
+     */
+    private final ReturnLogicOp logicOp;
+
+    /**
+     * Runtime decorator, can be null
+     */
+    private final IHandlerListInvocationDecorator decorator;
+
+    /**
+     * Spreading invokers for each interface method, all of type
+     * (Object, Object[])Object
+     */
+    private final Map<Method, MethodHandle> invokers = new HashMap<Method, MethodHandle>();
+
+    /**
+     * Proxy returned from {@link #get}
+     */
+    private final T proxy;
+
+    /**
+     * Handlers, populated by {@link #populate}
+     */
+    private Object[] handlers = MethodHandleHandlerList.NO_ARGS;
+
+    MethodHandleHandlerList(Class<T> type, ReturnLogicOp logicOp, IHandlerListInvocationDecorator decorator)
+    {
+        this.type = type;
+        this.logicOp = logicOp;
+        this.decorator = decorator;
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Method method : type.getMethods())
+        {
+            if (method.getDeclaringClass() == Object.class) continue;
+
+            try
+            {
+                int argCount = method.getParameterTypes().length;
+                method.setAccessible(true);
+                MethodHandle invoker = lookup.unreflect(method)
+                        .asType(MethodType.genericMethodType(argCount + 1))
+                        .asSpreader(Object[].class, argCount);
+                this.invokers.put(method, invoker);
+            }
+            catch (IllegalAccessException ex)
+            {
+                throw new BakingFailedException(ex);
+            }
+        }
+
+        this.proxy = type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this));
+    }
+
+    /* (non-Javadoc)
+     * @see com.mumfrey.liteloader.core.event.HandlerList.BakedHandlerList
+     *      #get()
+     */
+    @Override
+    public T get()
+    {
+        return this.proxy;
+    }
+
+    /* (non-Javadoc)
+     * @see com.mumfrey.liteloader.core.event.HandlerList.BakedHandlerList
+     *      #populate(java.util.List)
+     */
+    @Override
+    public BakedHandlerList<T> populate(List<T> listeners)
+    {
+        this.handlers = listeners.toArray();
+        return this;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+     *      java.lang.reflect.Method, java.lang.Object[])
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        MethodHandle invoker = this.invokers.get(method);
+        if (invoker == null)
+        {
+            return this.invokeObjectMethod(proxy, method, args);
+        }
+
+        if (args == null)
+        {
+            args = MethodHandleHandlerList.NO_ARGS;
+        }
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == boolean.class)
+        {
+            return this.invokeBooleanChain(invoker, args);
+        }
+
+        this.invokeVoidChain(invoker, args);
+        return MethodHandleHandlerList.getDefaultValue(returnType);
+    }
+
+    /**
+     * Invoke all handlers, discarding any return values
+     */
+    private void invokeVoidChain(MethodHandle invoker, Object[] args) throws Throwable
+    {
+        Object[] handlers = this.handlers;
+        for (int handlerIndex = 0; handlerIndex < handlers.length; handlerIndex++)
+        {
+            this.invokeHandler(invoker, handlerIndex, handlers[handlerIndex], args);
+        }
+    }
+
+    /**
+     * Invoke handlers applying the logic op to the return values, mirrors the
+     * bytecode generated by HandlerListClassLoader
+     */
+    private Boolean invokeBooleanChain(MethodHandle invoker, Object[] args) throws Throwable
+    {
+        Object[] handlers = this.handlers;
+        boolean isOrOperation = this.logicOp.isOr();
+        boolean breakOnMatch = this.logicOp.breakOnMatch();
+        boolean result = !isOrOperation || (this.logicOp.assumeTrue() && handlers.length == 0);
+
+        for (int handlerIndex = 0; handlerIndex < handlers.length; handlerIndex++)
+        {
+            boolean value = ((Boolean)this.invokeHandler(invoker, handlerIndex, handlers[handlerIndex], args)).booleanValue();
+            if (value == isOrOperation)
+            {
+                if (breakOnMatch)
+                {
+                    return Boolean.valueOf(isOrOperation);
+                }
+
+                result = isOrOperation;
+            }
+        }
+
+        return Boolean.valueOf(result);
+    }
+
+    private Object invokeHandler(MethodHandle invoker, int handlerIndex, Object handler, Object[] args) throws Throwable
+    {
+        if (this.decorator == null)
+        {
+            return invoker.invokeExact(handler, args);
+        }
+
+        this.decorator.preInvoke(handlerIndex);
+        try
+        {
+            return invoker.invokeExact(handler, args);
+        }
+        finally
+        {
+            this.decorator.postInvoke(handlerIndex);
+        }
+    }
+
+    /**
+     * Handle equals, hashCode and toString on the proxy
+     */
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args)
+    {
+        String name = method.getName();
+        if ("equals".equals(name))
+        {
+            return Boolean.valueOf(args != null && args.length == 1 && proxy == args[0]);
+        }
+        else if ("hashCode".equals(name))
+        {
+            return Integer.valueOf(System.identityHashCode(proxy));
+        }
+        else if ("toString".equals(name))
+        {
+            return String.format("%s$%s[%d]", HandlerList.class.getSimpleName(), this.type.getSimpleName(), this.handlers.length);
+        }
+
+        throw new UnsupportedOperationException("Unexpected method " + method + " invoked on handler list proxy");
+    }
+
+    /**
+     * Get the default (zero) value to return for the specified return type
+     */
+    private static Object getDefaultValue(Class<?> returnType)
+    {
+        if (!returnType.isPrimitive() || returnType == void.class) return null;
+        if (returnType == int.class) return Integer.valueOf(0);
+        if (returnType == long.class) return Long.valueOf(0L);
+        if (returnType == float.class) return Float.valueOf(0.0F);
+        if (returnType == double.class) return Double.valueOf(0.0);
+        if (returnType == short.class) return Short.valueOf((short)0);
+        if (returnType == byte.class) return Byte.valueOf((byte)0);
+        if (returnType == char.class) return Character.valueOf((char)0);
+        return Boolean.FALSE;
+    }
+}
@@ -13,6 +13,7 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
@@ -85,7 +86,7 @@ public class ProfilingHandlerList<T extends Listener> extends HandlerList<T>
     /**
      * Decorator which adds the profiler section calls to the invocation lists
      */
-    static class ProfilingHandlerListDecorator<T extends Listener> implements IHandlerListDecorator<T>
+    static class ProfilingHandlerListDecorator<T extends Listener> implements IHandlerListDecorator<T>, IHandlerListInvocationDecorator
     {
         private final Profiler profiler;
 
@@ -133,7 +134,9 @@ public class ProfilingHandlerList<T extends Listener> extends HandlerList<T>
             {
                 Constructor<BakedHandlerList<T>> ctor = handlerClass.getDeclaredConstructor(Profiler.class);
                 ctor.setAccessible(true);
-                return ctor.newInstance(this.profiler);
+                BakedHandlerList<T> handlerList = ctor.newInstance(this.profiler);
+                ((BakedList<T>)handlerList).setSectionNames(this.names.toArray(new String[this.names.size()]));
+                return handlerList;
             }
             catch (Exception ex)
             {
@@ -177,10 +180,12 @@ public class ProfilingHandlerList<T extends Listener> extends HandlerList<T>
         @Override
         public void preInvokeInterfaceMethod(int handlerIndex, ClassNode classNode, MethodNode method, Type[] args)
         {
-            // Call this.startSection
+            // Call this.startSection, the names are looked up by index since
+            // the generated class is shared by all lists with the same shape
             method.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
-            method.instructions.add(new LdcInsnNode(this.names.get(handlerIndex)));
-            method.instructions.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, classNode.superName, "startSection", "(Ljava/lang/String;)V", false));
+            method.instructions.add(handlerIndex > Short.MAX_VALUE ? new LdcInsnNode(Integer.valueOf(handlerIndex))
+                    : new IntInsnNode(Opcodes.SIPUSH, handlerIndex));
+            method.instructions.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, classNode.superName, "startSection", "(I)V", false));
         }
 
         /* (non-Javadoc)
@@ -205,6 +210,26 @@ public class ProfilingHandlerList<T extends Listener> extends HandlerList<T>
         public void populateInterfaceMethod(ClassNode classNode, MethodNode method)
         {
         }
+
+        /* (non-Javadoc)
+         * @see com.mumfrey.liteloader.core.event.IHandlerListInvocationDecorator
+         *      #preInvoke(int)
+         */
+        @Override
+        public void preInvoke(int handlerIndex)
+        {
+            this.profiler.startSection(this.names.get(handlerIndex));
+        }
+
+        /* (non-Javadoc)
+         * @see com.mumfrey.liteloader.core.event.IHandlerListInvocationDecorator
+         *      #postInvoke(int)
+         */
+        @Override
+        public void postInvoke(int handlerIndex)
+        {
+            this.profiler.endSection();
+        }
     }
 
     /**
@@ -218,11 +243,18 @@ public class ProfilingHandlerList<T extends Listener> extends HandlerList<T>
     {
         private final Profiler profiler;
 
+        private String[] sectionNames = new String[0];
+
         public BakedList(Profiler profiler)
         {
             this.profiler = profiler;
         }
 
+        void setSectionNames(String[] sectionNames)
+        {
+            this.sectionNames = sectionNames;
+        }
+
         @Override
         public abstract T get();
 
@@ -234,6 +266,11 @@ public class ProfilingHandlerList<T extends Listener> extends HandlerList<T>
             this.profiler.startSection(name);
         }
 
+        protected void startSection(int handlerIndex)
+        {
+            this.profiler.startSection(this.sectionNames[handlerIndex]);
+        }
+
         protected void endSection()
         {
             this.profiler.endSection();
@@ -15,9 +15,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
+import java.util.TreeMap;
+import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -27,6 +28,7 @@ import org.spongepowered.asm.util.Constants.ManifestAttributes;
 
 import com.google.common.io.Files;
 import com.google.common.primitives.Ints;
+import com.mumfrey.liteloader.core.api.DiscoveryCache;
 import com.mumfrey.liteloader.core.api.LoadableModFile;
 import com.mumfrey.liteloader.launch.ClassPathUtilities;
 import com.mumfrey.liteloader.launch.InjectionStrategy;
@@ -105,6 +107,18 @@ public class LoadableFile extends File implements TweakContainer<File>
      */
     protected List<Throwable> mixinErrors = new ArrayList<Throwable>();
 
+    /**
+     * Index of the container contents, read on first use
+     */
+    private transient ZipIndex zipIndex;
+
+    /**
+     * Discovery cache entry for this container, if the cache is active
+     */
+    private transient DiscoveryCache.Entry discoveryCacheEntry;
+
+    private transient boolean discoveryCacheChecked;
+
     /**
      * Create a new tweak container wrapping the specified file
      */
@@ -148,6 +162,9 @@ public class LoadableFile extends File implements TweakContainer<File>
 
     protected void assignJarMetaData(LoadableFile file)
     {
+        this.zipIndex              = file.zipIndex;
+        this.discoveryCacheEntry   = file.discoveryCacheEntry;
+        this.discoveryCacheChecked = file.discoveryCacheChecked;
         this.modSystems        = file.modSystems;
         this.tweakClassName    = file.tweakClassName;
         this.classPathEntries  = file.classPathEntries;
@@ -163,8 +180,6 @@ public class LoadableFile extends File implements TweakContainer<File>
      */
     protected void readJarMetaData()
     {
-        JarFile jar = null;
-
         if (this.isDirectory())
         {
             return;
@@ -172,24 +187,23 @@ public class LoadableFile extends File implements TweakContainer<File>
 
         try
         {
-            jar = new JarFile(this);
-            if (jar.getManifest() != null)
+            Map<String, String> mfAttributes = this.getManifestAttributes();
+            if (mfAttributes != null)
             {
                 LiteLoaderLogger.info("Inspecting jar metadata in '%s'", this.getName());
-                Attributes mfAttributes = jar.getManifest().getMainAttributes();
-
-                String mfAttmodSystemList     = mfAttributes.getValue(LoadableFile.MFATT_MODTYPE);
-                String mfAttTweakClass        = mfAttributes.getValue(LoadableFile.MFATT_TWEAK_CLASS);
-                String mfAttClassPath         = mfAttributes.getValue(LoadableFile.MFATT_CLASS_PATH);
-                String mfAttTweakOrder        = mfAttributes.getValue(LoadableFile.MFATT_TWEAK_ORDER);
-                String mfAttDisplayName       = mfAttributes.getValue(LoadableFile.MFATT_IMPLEMENTATION_TITLE);
-                String mfAttTweakName         = mfAttributes.getValue(LoadableFile.MFATT_TWEAK_NAME);
-                String mfAttVersion           = mfAttributes.getValue(LoadableFile.MFATT_IMPLEMENTATION_VERSION);
-                String mfAttTweakVersion      = mfAttributes.getValue(LoadableFile.MFATT_TWEAK_VERSION);
-                String mfAttAuthor            = mfAttributes.getValue(LoadableFile.MFATT_IMPLEMENTATION_VENDOR);
-                String mfAttTweakAuthor       = mfAttributes.getValue(LoadableFile.MFATT_TWEAK_AUTHOR);
-                String mfAttMixinConfigs      = mfAttributes.getValue(LoadableFile.MFATT_MIXIN_CONFIGS);
-                String mfAttInjectionStrategy = mfAttributes.getValue(LoadableFile.MFATT_INJECTION_STRATEGY);
+
+                String mfAttmodSystemList     = mfAttributes.get(LoadableFile.MFATT_MODTYPE);
+                String mfAttTweakClass        = mfAttributes.get(LoadableFile.MFATT_TWEAK_CLASS);
+                String mfAttClassPath         = mfAttributes.get(LoadableFile.MFATT_CLASS_PATH);
+                String mfAttTweakOrder        = mfAttributes.get(LoadableFile.MFATT_TWEAK_ORDER);
+                String mfAttDisplayName       = mfAttributes.get(LoadableFile.MFATT_IMPLEMENTATION_TITLE);
+                String mfAttTweakName         = mfAttributes.get(LoadableFile.MFATT_TWEAK_NAME);
+                String mfAttVersion           = mfAttributes.get(LoadableFile.MFATT_IMPLEMENTATION_VERSION);
+                String mfAttTweakVersion      = mfAttributes.get(LoadableFile.MFATT_TWEAK_VERSION);
+                String mfAttAuthor            = mfAttributes.get(LoadableFile.MFATT_IMPLEMENTATION_VENDOR);
+                String mfAttTweakAuthor       = mfAttributes.get(LoadableFile.MFATT_TWEAK_AUTHOR);
+                String mfAttMixinConfigs      = mfAttributes.get(LoadableFile.MFATT_MIXIN_CONFIGS);
+                String mfAttInjectionStrategy = mfAttributes.get(LoadableFile.MFATT_INJECTION_STRATEGY);
                 
                 if (mfAttmodSystemList != null)
                 {
@@ -240,14 +254,93 @@ public class LoadableFile extends File implements TweakContainer<File>
         {
             LiteLoaderLogger.warning("Could not parse jar metadata in '%s'", this);
         }
-        finally
+    }
+
+    /**
+     * Get the main attributes from the jar manifest, from the discovery cache
+     * if possible, returns null if the container has no manifest
+     * 
+     * @throws IOException if the manifest could not be read
+     */
+    protected Map<String, String> getManifestAttributes() throws IOException
+    {
+        DiscoveryCache.Entry cached = this.getDiscoveryCacheEntry();
+        Map<String, String> attributes = null;
+
+        if (cached != null && cached.hasManifestAttributes())
+        {
+            if (cached.getManifestAttributes() == null)
+            {
+                return null;
+            }
+
+            attributes = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            attributes.putAll(cached.getManifestAttributes());
+            return attributes;
+        }
+
+        Manifest manifest = this.getZipIndex().getManifest();
+        if (manifest != null)
         {
-            try
+            attributes = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            for (Map.Entry<Object, Object> attribute : manifest.getMainAttributes().entrySet())
             {
-                if (jar != null) jar.close();
+                attributes.put(attribute.getKey().toString(), String.valueOf(attribute.getValue()));
             }
-            catch (IOException ex) {}
         }
+
+        if (cached != null)
+        {
+            cached.setManifestAttributes(attributes);
+        }
+
+        return attributes;
+    }
+
+    /**
+     * Get the discovery cache entry for this container, null if the cache is
+     * not active or this container can't be cached
+     */
+    protected synchronized DiscoveryCache.Entry getDiscoveryCacheEntry()
+    {
+        if (!this.discoveryCacheChecked)
+        {
+            this.discoveryCacheEntry = DiscoveryCache.getEntry(this);
+            this.discoveryCacheChecked = true;
+        }
+
+        return this.discoveryCacheEntry;
+    }
+
+    /**
+     * Get the index of this container's contents, reading it if necessary.
+     * The index is shared by the manifest, metadata and class enumeration
+     * stages so that the file is only opened once for all of them.
+     * 
+     * @throws IOException if this is a directory or the file could not be read
+     */
+    protected synchronized ZipIndex getZipIndex() throws IOException
+    {
+        if (this.zipIndex == null)
+        {
+            if (this.isDirectory())
+            {
+                throw new IOException(this + " is a directory");
+            }
+
+            this.zipIndex = ZipIndex.read(this, LoadableMod.METADATA_FILENAME);
+        }
+
+        return this.zipIndex;
+    }
+
+    /**
+     * Discard the index for this container once enumeration is complete, it
+     * will be read again if required
+     */
+    protected synchronized void releaseZipIndex()
+    {
+        this.zipIndex = null;
     }
 
     public Set<String> getModSystems()
@@ -485,7 +578,33 @@ public class LoadableFile extends File implements TweakContainer<File>
      */
     public String getFileContents(String name, Charset charset)
     {
-        return LoadableFile.getFileContents(this, name, charset);
+        if (this.isDirectory())
+        {
+            return LoadableFile.getFileContents(this, name, charset);
+        }
+
+        DiscoveryCache.Entry cached = LoadableMod.METADATA_FILENAME.equals(name) ? this.getDiscoveryCacheEntry() : null;
+        if (cached != null && cached.hasMetaData())
+        {
+            return cached.getMetaData();
+        }
+
+        try
+        {
+            byte[] bytes = this.getZipIndex().getContents(name);
+            String contents = bytes != null ? LoadableModFile.bytesToString(bytes) : null;
+            if (cached != null)
+            {
+                cached.setMetaData(contents);
+            }
+            return contents;
+        }
+        catch (IOException ex)
+        {
+            ex.printStackTrace();
+        }
+
+        return null;
     }
 
     /**
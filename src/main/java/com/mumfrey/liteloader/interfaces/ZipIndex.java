@@ -0,0 +1,209 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.interfaces;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Snapshot of the central directory of a zip or jar container, built by
+ * opening the container exactly once. Holds the entry names and sizes, the
+ * manifest, and the contents of any entries requested up-front (eg. the mod
+ * metadata) so that the enumeration stages don't need to keep re-opening the
+ * same file. The underlying file is always closed before {@link #read}
+ * returns, so an index never holds a file handle.
+ *
+ * @author Adam Mummery-Smith
+ */
+public final class ZipIndex
+{
+    /**
+     * Container this index was read from
+     */
+    private final File file;
+
+    /**
+     * Sizes of all entries by name, in central directory order
+     */
+    private final Map<String, Long> entries = new LinkedHashMap<String, Long>();
+
+    /**
+     * Contents of entries which were requested when the index was read
+     */
+    private final Map<String, byte[]> contents = new HashMap<String, byte[]>();
+
+    /**
+     * Jar manifest, null if the container has no manifest
+     */
+    private Manifest manifest;
+
+    private ZipIndex(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Read the index for the specified container
+     *
+     * @param file Zip or jar file to read
+     * @param prefetch Names of entries whose contents should be read while the
+     *      file is open
+     * @throws IOException if the container could not be read
+     */
+    public static ZipIndex read(File file, String... prefetch) throws IOException
+    {
+        ZipIndex index = new ZipIndex(file);
+        JarFile jar = new JarFile(file, false);
+
+        try
+        {
+            index.manifest = jar.getManifest();
+
+            for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();)
+            {
+                ZipEntry entry = entries.nextElement();
+                index.entries.put(entry.getName(), entry.getSize());
+            }
+
+            for (String name : prefetch)
+            {
+                ZipEntry entry = jar.getEntry(name);
+                if (entry != null)
+                {
+                    index.contents.put(name, ZipIndex.readEntry(jar, entry));
+                }
+            }
+        }
+        finally
+        {
+            jar.close();
+        }
+
+        return index;
+    }
+
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    public Manifest getManifest()
+    {
+        return this.manifest;
+    }
+
+    /**
+     * Get whether the container has an entry with the specified name
+     */
+    public boolean hasEntry(String name)
+    {
+        return this.entries.containsKey(name);
+    }
+
+    /**
+     * Get the uncompressed size of the specified entry, or -1 if the entry
+     * does not exist or the size is unknown
+     */
+    public long getSize(String name)
+    {
+        Long size = this.entries.get(name);
+        return size != null ? size.longValue() : -1L;
+    }
+
+    /**
+     * Get the names of all entries in the container
+     */
+    public List<String> getEntryNames()
+    {
+        return Collections.unmodifiableList(new ArrayList<String>(this.entries.keySet()));
+    }
+
+    /**
+     * Get the names of all non-empty classes in the container, in binary name
+     * format (eg. <tt>com.example.Foo</tt>)
+     */
+    public List<String> getClassNames()
+    {
+        List<String> classes = new ArrayList<String>();
+        for (Map.Entry<String, Long> entry : this.entries.entrySet())
+        {
+            String entryName = entry.getKey();
+            if (entry.getValue().longValue() > 0 && entryName.endsWith(".class"))
+            {
+                classes.add(entryName.substring(0, entryName.length() - 6).replace('/', '.'));
+            }
+        }
+
+        return classes;
+    }
+
+    /**
+     * Get the contents of the specified entry. Entries which were prefetched
+     * are returned from memory, other entries which exist are read from the
+     * container on demand. Returns null without touching the file if the
+     * entry does not exist.
+     *
+     * @param name Entry name
+     * @throws IOException if the entry could not be read
+     */
+    public byte[] getContents(String name) throws IOException
+    {
+        if (!this.hasEntry(name))
+        {
+            return null;
+        }
+
+        byte[] bytes = this.contents.get(name);
+        if (bytes != null)
+        {
+            return bytes;
+        }
+
+        JarFile jar = new JarFile(this.file, false);
+        try
+        {
+            ZipEntry entry = jar.getEntry(name);
+            return entry != null ? ZipIndex.readEntry(jar, entry) : null;
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    private static byte[] readEntry(JarFile jar, ZipEntry entry) throws IOException
+    {
+        InputStream stream = jar.getInputStream(entry);
+        try
+        {
+            return ByteStreams.toByteArray(stream);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ZipIndex[%s, %d entries]", this.file, this.entries.size());
+    }
+}
@@ -53,7 +53,7 @@ public class LiteLoaderTransformer extends ClassTransformer
             }
         }
 
-        return this.writeClass(classNode);
+        return this.writeClass(classNode, false);
     }
 
     private byte[] stripFinalModifiers(byte[] basicClass)
@@ -65,6 +65,6 @@ public class LiteLoaderTransformer extends ClassTransformer
             field.access = field.access & ~Opcodes.ACC_FINAL;
         }
 
-        return this.writeClass(classNode);
+        return this.writeClass(classNode, false);
     }
 }
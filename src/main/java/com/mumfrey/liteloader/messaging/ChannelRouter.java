@@ -0,0 +1,177 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.messaging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.mumfrey.liteloader.Priority;
+import com.mumfrey.liteloader.util.SortableValue;
+
+/**
+ * Routes MessageBus channels to subscribed messengers. Subscriptions are
+ * stored in a trie keyed by the colon-separated segments of the channel name,
+ * a subscription ending in <tt>*</tt> matches every channel below that node.
+ *
+ * <p>The messengers for each channel are resolved once into an array which is
+ * cached until the subscriptions change, so dispatching to a channel with
+ * wildcard subscribers costs the same as dispatching to one without.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+final class ChannelRouter
+{
+    private static final Messenger[] NO_MESSENGERS = new Messenger[0];
+
+    /**
+     * A messenger subscribed to a node, with the order in which it subscribed
+     */
+    static final class Subscription
+    {
+        final Messenger messenger;
+        final int priority;
+        final int order;
+
+        Subscription(Messenger messenger, int order)
+        {
+            Priority priority = messenger.getClass().getAnnotation(Priority.class);
+            this.messenger = messenger;
+            this.priority = priority != null ? priority.value() : 1000;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Trie node
+     */
+    static final class Node
+    {
+        final Map<String, Node> children = new HashMap<String, Node>();
+
+        /**
+         * Messengers subscribed to the channel ending at this node
+         */
+        final List<Subscription> exact = new ArrayList<Subscription>();
+
+        /**
+         * Messengers subscribed to all channels below this node
+         */
+        final List<Subscription> wildcard = new ArrayList<Subscription>();
+
+        Node getChild(String segment, boolean create)
+        {
+            Node child = this.children.get(segment);
+            if (child == null && create)
+            {
+                child = new Node();
+                this.children.put(segment, child);
+            }
+
+            return child;
+        }
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Resolved routes, replaced whenever the subscriptions change so that a
+     * route resolved against the old subscriptions can't be cached in the new
+     * map
+     */
+    private volatile ConcurrentMap<String, Messenger[]> routes = new ConcurrentHashMap<String, Messenger[]>();
+
+    private int subscriptionCount;
+
+    /**
+     * Subscribe a messenger to a channel or wildcard channel
+     */
+    synchronized void subscribe(String channel, Messenger messenger)
+    {
+        String[] segments = channel.split(":");
+        int last = segments.length - 1;
+        boolean wildcard = Message.WILDCARD.equals(segments[last]);
+
+        Node node = this.root;
+        for (int index = 0; index < (wildcard ? last : segments.length); index++)
+        {
+            node = node.getChild(segments[index], true);
+        }
+
+        Subscription subscription = new Subscription(messenger, this.subscriptionCount++);
+        (wildcard ? node.wildcard : node.exact).add(subscription);
+        this.routes = new ConcurrentHashMap<String, Messenger[]>();
+    }
+
+    /**
+     * Get the messengers which should receive messages on the specified
+     * channel, in priority order
+     */
+    Messenger[] getMessengers(String channel)
+    {
+        ConcurrentMap<String, Messenger[]> routes = this.routes;
+        Messenger[] messengers = routes.get(channel);
+        if (messengers == null)
+        {
+            messengers = this.resolve(channel);
+            routes.put(channel, messengers);
+        }
+
+        return messengers;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Messenger[] resolve(String channel)
+    {
+        List<Subscription> matches = new ArrayList<Subscription>();
+
+        Node node = this.root;
+        for (String segment : channel.split(":"))
+        {
+            matches.addAll(node.wildcard);
+            node = node.getChild(segment, false);
+            if (node == null)
+            {
+                break;
+            }
+        }
+
+        if (node != null)
+        {
+            matches.addAll(node.exact);
+        }
+
+        if (matches.isEmpty())
+        {
+            return ChannelRouter.NO_MESSENGERS;
+        }
+
+        SortableValue<Messenger>[] sortable = new SortableValue[matches.size()];
+        for (int index = 0; index < sortable.length; index++)
+        {
+            Subscription subscription = matches.get(index);
+            sortable[index] = new SortableValue<Messenger>(subscription.priority, subscription.order, subscription.messenger);
+        }
+
+        Arrays.sort(sortable);
+
+        // A messenger subscribed by both name and wildcard only receives the message once
+        List<Messenger> messengers = new ArrayList<Messenger>(sortable.length);
+        for (SortableValue<Messenger> value : sortable)
+        {
+            if (!messengers.contains(value.getValue()))
+            {
+                messengers.add(value.getValue());
+            }
+        }
+
+        return messengers.toArray(new Messenger[messengers.size()]);
+    }
+}
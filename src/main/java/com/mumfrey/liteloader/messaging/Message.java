@@ -24,6 +24,17 @@ public final class Message
     private static final Pattern channelPattern = Pattern.compile("^[a-z0-9]([a-z0-9_\\-]*[a-z0-9])?:[a-z0-9]([a-z0-9_\\-]*[a-z0-9])?$",
                                                                     Pattern.CASE_INSENSITIVE);
 
+    /**
+     * Regex for matching valid channel categories
+     */
+    private static final Pattern categoryPattern = Pattern.compile("^[a-z0-9]([a-z0-9_\\-]*[a-z0-9])?$", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Channel name which subscribes to every channel in a category, eg.
+     * <tt>foo:*</tt>
+     */
+    public static final String WILDCARD = "*";
+
     private final String channel, replyChannel;
     private final Messenger sender;
     private final Map<String, ?> payload;
@@ -167,6 +178,22 @@ public final class Message
     {
         return Message.channelPattern.matcher(channel).matches();
     }
+
+    /**
+     * Check whether the supplied name is a valid channel to subscribe to,
+     * either a valid channel name or a category followed by a wildcard
+     * 
+     * @param channel
+     */
+    public static boolean isValidSubscription(String channel)
+    {
+        if (channel.endsWith(":" + Message.WILDCARD))
+        {
+            return Message.categoryPattern.matcher(channel.substring(0, channel.length() - 2)).matches();
+        }
+
+        return Message.isValidChannel(channel);
+    }
     
     /**
      * Build a KV map from interleaved keys and values, convenience function
@@ -5,43 +5,79 @@
  */
 package com.mumfrey.liteloader.messaging;
 
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.mumfrey.liteloader.api.InterfaceProvider;
 import com.mumfrey.liteloader.api.Listener;
 import com.mumfrey.liteloader.core.InterfaceRegistrationDelegate;
-import com.mumfrey.liteloader.core.event.HandlerList;
-import com.mumfrey.liteloader.interfaces.FastIterable;
 import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
 
 /**
  * Intra-mod messaging bus, allows mods to send arbitrary notifications to each
  * other without having to create an explicit dependency or resort to reflection
  * 
+ * <p>Messages sent before startup is complete are queued and dispatched in
+ * the order they were sent once startup completes. When deferred dispatch is
+ * enabled with <tt>liteloader.messaging.deferred</tt> all messages are queued,
+ * from any thread, and dispatched on the main thread at the start of each
+ * tick. Messages sent while the queue is being drained, for example replies,
+ * are dispatched on the following tick rather than recursing.</p>
+ * 
  * @author Adam Mummery-Smith
  */
 public final class MessageBus implements InterfaceProvider
 {
+    /**
+     * Set to true to queue all messages and dispatch them at the start of the
+     * next tick
+     */
+    public static final boolean DEFERRED = Boolean.parseBoolean(System.getProperty("liteloader.messaging.deferred", "false"));
+
+    /**
+     * Capacity of the message queue
+     */
+    private static final int QUEUE_SIZE = Math.max(16, Integer.getInteger("liteloader.messaging.queue", 4096).intValue());
+
+    /**
+     * Number of dropped messages between warnings
+     */
+    private static final int WARN_DROP_THRESHOLD = 1000;
+
+    /**
+     * Drain time above which the drain is logged
+     */
+    private static final long SLOW_DRAIN_NANOS = 5000000L;
+
     /**
      * Singleton
      */
-    private static MessageBus instance;
+    private static final MessageBus instance = new MessageBus();
 
     /**
      * Messengers subscribed to each channel
      */
-    private final Map<String, FastIterable<Messenger>> messengers = new HashMap<String, FastIterable<Messenger>>();
+    private final ChannelRouter router = new ChannelRouter();
+
+    /**
+     * Pending messages sent pre-startup or in deferred mode
+     */
+    private final MessageQueue messageQueue = new MessageQueue(MessageBus.QUEUE_SIZE);
 
     /**
-     * Pending messages dispatched pre-startup
+     * Messages dropped because the queue was full
      */
-    private final Deque<Message> messageQueue = new LinkedList<Message>();
+    private final AtomicLong droppedMessages = new AtomicLong();
 
-    private boolean enableMessaging = false;
+    private volatile boolean enableMessaging = false;
+
+    /**
+     * Queue depth at the start of the deepest drain so far
+     */
+    private volatile int peakQueueDepth;
+
+    private volatile long lastDrainTime, maxDrainTime;
 
     private MessageBus()
     {
@@ -52,11 +88,6 @@ public final class MessageBus implements InterfaceProvider
      */
     public static MessageBus getInstance()
     {
-        if (MessageBus.instance == null)
-        {
-            MessageBus.instance = new MessageBus();
-        }
-
         return MessageBus.instance;
     }
 
@@ -94,14 +125,56 @@ public final class MessageBus implements InterfaceProvider
     public void onStartupComplete()
     {
         this.enableMessaging = true;
+        this.drainQueue();
+    }
 
-        while (this.messageQueue.size() > 0)
+    /**
+     * Called on the main thread at the start of each tick, dispatches messages
+     * queued in deferred mode
+     */
+    public void onTick()
+    {
+        if (this.enableMessaging)
         {
-            Message msg = this.messageQueue.pop();
-            this.dispatchMessage(msg);
+            this.drainQueue();
         }
     }
 
+    /**
+     * Get the number of messages waiting to be dispatched
+     */
+    public int getQueueDepth()
+    {
+        return this.messageQueue.size();
+    }
+
+    /**
+     * Get the number of messages which were dropped because the queue was full
+     */
+    public long getDroppedMessages()
+    {
+        return this.droppedMessages.get();
+    }
+
+    /**
+     * Get the time in nanoseconds taken to dispatch the queued messages the
+     * last time the queue was drained
+     */
+    public long getLastDrainTime()
+    {
+        return this.lastDrainTime;
+    }
+
+    /**
+     * Log queue statistics
+     */
+    public void dumpStats()
+    {
+        LiteLoaderLogger.info("MessageBus: deferred=%s depth=%d/%d peak=%d dropped=%d lastDrain=%.3fms maxDrain=%.3fms",
+                MessageBus.DEFERRED, this.messageQueue.size(), this.messageQueue.getCapacity(), this.peakQueueDepth,
+                this.droppedMessages.get(), this.lastDrainTime / 1000000.0, this.maxDrainTime / 1000000.0);
+    }
+
     public void registerMessenger(Messenger messenger)
     {
         List<String> messageChannels = messenger.getMessageChannels();
@@ -114,10 +187,10 @@ public final class MessageBus implements InterfaceProvider
 
         for (String channel : messageChannels)
         {
-            if (channel != null && Message.isValidChannel(channel))
+            if (channel != null && Message.isValidSubscription(channel))
             {
                 LiteLoaderLogger.info("Listener %s is registering MessageBus channel %s", messenger.getName(), channel);
-                this.getMessengerList(channel).add(messenger);
+                this.router.subscribe(channel, messenger);
             }
             else
             {
@@ -131,51 +204,78 @@ public final class MessageBus implements InterfaceProvider
      */
     private void sendMessage(Message message)
     {
-        if (this.enableMessaging)
+        if (this.enableMessaging && !MessageBus.DEFERRED)
         {
             this.dispatchMessage(message);
             return;
         }
 
-        this.messageQueue.push(message);
+        if (!this.messageQueue.offer(message))
+        {
+            long dropped = this.droppedMessages.incrementAndGet();
+            if (dropped % MessageBus.WARN_DROP_THRESHOLD == 1)
+            {
+                LiteLoaderLogger.warning("MessageBus queue is full, dropped message on channel '%s' (%d messages dropped so far)",
+                        message.getChannel(), dropped);
+            }
+        }
     }
 
     /**
-     * @param message
+     * Dispatch the messages which are in the queue when the drain starts,
+     * messages queued by the messengers during the drain are left for the next
+     * drain so that replies can't loop indefinitely
      */
-    private void dispatchMessage(Message message)
+    private void drainQueue()
     {
-        try
+        int depth = this.messageQueue.size();
+        if (depth == 0)
+        {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        for (int remaining = depth; remaining > 0; remaining--)
         {
-            FastIterable<Messenger> messengerList = this.messengers.get(message.getChannel());
-            if (messengerList != null)
+            Message message = this.messageQueue.poll();
+            if (message == null)
             {
-                messengerList.all().receiveMessage(message);
+                // Next message is still being published by another thread
+                break;
             }
+
+            this.dispatchMessage(message);
         }
-        catch (StackOverflowError err)
+
+        long drainTime = System.nanoTime() - startTime;
+        this.lastDrainTime = drainTime;
+        this.maxDrainTime = Math.max(this.maxDrainTime, drainTime);
+        this.peakQueueDepth = Math.max(this.peakQueueDepth, depth);
+
+        if (drainTime > MessageBus.SLOW_DRAIN_NANOS)
         {
-            // A listener tried to reply on the same channel and ended up calling itself
-            throw new RuntimeException("Stack overflow encountered dispatching message on channel '"
-                    + message.getChannel() + "'. Did you reply to yourself?");
+            LiteLoaderLogger.debug("MessageBus dispatched %d queued messages in %.3fms", depth, drainTime / 1000000.0);
         }
     }
 
     /**
-     * Get messengers for the specified channel
-     * 
-     * @param channel
+     * @param message
      */
-    private FastIterable<Messenger> getMessengerList(String channel)
+    private void dispatchMessage(Message message)
     {
-        FastIterable<Messenger> messengerList = this.messengers.get(channel);
-        if (messengerList == null)
+        try
         {
-            messengerList = new HandlerList<Messenger>(Messenger.class);
-            this.messengers.put(channel, messengerList);
+            for (Messenger messenger : this.router.getMessengers(message.getChannel()))
+            {
+                messenger.receiveMessage(message);
+            }
+        }
+        catch (StackOverflowError err)
+        {
+            // A listener tried to reply on the same channel and ended up calling itself
+            throw new RuntimeException("Stack overflow encountered dispatching message on channel '"
+                    + message.getChannel() + "'. Did you reply to yourself?");
         }
-
-        return messengerList;
     }
 
     /**
@@ -0,0 +1,134 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.messaging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer, single-consumer ring buffer for queued messages.
+ * Any thread may offer messages, producers claim a slot by advancing the
+ * tail and publish the message by advancing the slot's sequence number, so
+ * the consumer never sees a slot which is still being written. Messages are
+ * polled in the order their slots were claimed.
+ *
+ * <p>Only one thread may poll the queue at a time.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+final class MessageQueue
+{
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<Message> slots;
+
+    /**
+     * Sequence number for each slot, a slot is free for the producer at
+     * position <tt>n</tt> when its sequence is <tt>n</tt> and ready for the
+     * consumer when its sequence is <tt>n + 1</tt>
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Next position to be claimed by a producer
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Next position to be read by the consumer, only written by the consumer
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity Requested capacity, rounded up to a power of two
+     */
+    MessageQueue(int capacity)
+    {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<Message>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int index = 0; index < this.capacity; index++)
+        {
+            this.sequences.set(index, index);
+        }
+    }
+
+    int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * Get the number of messages in the queue, this includes messages which
+     * are still being published
+     */
+    int size()
+    {
+        return (int)Math.max(0L, this.tail.get() - this.head);
+    }
+
+    /**
+     * Append a message to the queue
+     *
+     * @return false if the queue is full
+     */
+    boolean offer(Message message)
+    {
+        long position = this.tail.get();
+        while (true)
+        {
+            int index = (int)position & this.mask;
+            long difference = this.sequences.get(index) - position;
+            if (difference == 0L)
+            {
+                if (this.tail.compareAndSet(position, position + 1))
+                {
+                    this.slots.set(index, message);
+                    this.sequences.set(index, position + 1);
+                    return true;
+                }
+
+                position = this.tail.get();
+            }
+            else if (difference < 0L)
+            {
+                // The consumer hasn't freed this slot yet
+                return false;
+            }
+            else
+            {
+                // Another producer claimed this position
+                position = this.tail.get();
+            }
+        }
+    }
+
+    /**
+     * Take the message at the head of the queue
+     *
+     * @return the message or null if the queue is empty or the message at the
+     *      head is still being published
+     */
+    Message poll()
+    {
+        long position = this.head;
+        int index = (int)position & this.mask;
+        if (this.sequences.get(index) != position + 1)
+        {
+            return null;
+        }
+
+        Message message = this.slots.get(index);
+        this.slots.set(index, null);
+        this.sequences.set(index, position + this.capacity);
+        this.head = position + 1;
+        return message;
+    }
+}
@@ -45,6 +45,11 @@ public interface Messenger extends Listener
      * the same category, which may match your mod id. Channel names and
      * categories are case-sensitive.</p>
      * 
+     * <p>To receive every message in a category, listen on the category
+     * followed by a wildcard, for example <tt>foo:*</tt>. A listener which
+     * subscribes to a channel both by name and by wildcard only receives each
+     * message once.</p>
+     * 
      * @return List of channels to listen on
      */
     public abstract List<String> getMessageChannels();
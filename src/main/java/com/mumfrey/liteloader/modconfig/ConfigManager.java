@@ -218,7 +218,8 @@ public class ConfigManager
     }
 
     /**
-     * Force all mod configs to be flushed to disk
+     * Force all mod configs to be flushed to disk, blocks until the writes are
+     * complete
      */
     public void syncConfig()
     {
@@ -226,6 +227,8 @@ public class ConfigManager
         {
             writer.sync();
         }
+
+        ExposableConfigWriter.flush();
     }
 
     /**
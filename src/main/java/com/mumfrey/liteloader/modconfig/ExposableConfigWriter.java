@@ -6,17 +6,40 @@
 package com.mumfrey.liteloader.modconfig;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.InstanceCreator;
+import com.google.gson.JsonElement;
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
 
 /**
  * Manages serialisation of exposable properties to a JSON config file via Gson 
+ * 
+ * <p>Writes are performed in two stages: the exposable is snapshotted into a
+ * JSON tree on the calling thread, and the snapshot is then serialised and
+ * written on a background thread. Snapshots which are queued while a write is
+ * pending replace the pending snapshot, and snapshots identical to the last
+ * content written are skipped. The file is written to a temporary file which
+ * is synced and then renamed over the config file, so a crash mid-write never
+ * leaves a truncated config behind.</p>
  *
  * @author Adam Mummery-Smith
  */
@@ -27,6 +50,16 @@ public final class ExposableConfigWriter implements InstanceCreator<Exposable>
      */
     private static final long ANTI_HAMMER_DELAY = 1000L;
 
+    /**
+     * Set to false to write config files on the calling thread
+     */
+    private static final boolean ASYNC = Boolean.parseBoolean(System.getProperty("liteloader.config.async", "true"));
+
+    /**
+     * Maximum time to wait for pending writes when flushing
+     */
+    private static final long FLUSH_TIMEOUT_MS = 10000L;
+
     /**
      * Exposable instance which we will serialise exposed properties 
      */
@@ -69,6 +102,18 @@ public final class ExposableConfigWriter implements InstanceCreator<Exposable>
      */
     private Object readWriteLock = new Object();
 
+    /**
+     * Snapshot waiting to be written by the background writer, null if no
+     * write is pending
+     */
+    private final AtomicReference<JsonElement> pendingSnapshot = new AtomicReference<JsonElement>();
+
+    /**
+     * Content of the last successful write, only accessed while holding the
+     * read/write lock
+     */
+    private String lastContent;
+
     /**
      * @param exposable
      * @param configFile
@@ -196,32 +241,101 @@ public final class ExposableConfigWriter implements InstanceCreator<Exposable>
     }
 
     /**
-     * Write the config to the file
+     * Snapshot the config and queue the snapshot to be written to the file
      */
     void write()
+    {
+        JsonElement snapshot;
+        try
+        {
+            snapshot = this.gson.toJsonTree(this.exposable);
+        }
+        catch (Exception ex)
+        {
+            LiteLoaderLogger.warning(ex, "Error serialising config file %s", this.configFile.getName());
+            return;
+        }
+
+        this.dirty = false;
+        this.lastWrite = System.currentTimeMillis();
+
+        if (!ExposableConfigWriter.ASYNC)
+        {
+            this.writeSnapshot(snapshot);
+            return;
+        }
+
+        // Only schedule a write if one isn't already pending, the pending write will pick up the new snapshot
+        if (this.pendingSnapshot.getAndSet(snapshot) == null)
+        {
+            WriteBehind.schedule(this);
+        }
+    }
+
+    /**
+     * Write the pending snapshot, called on the background writer thread
+     */
+    void writePending()
+    {
+        JsonElement snapshot = this.pendingSnapshot.getAndSet(null);
+        if (snapshot != null)
+        {
+            this.writeSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Serialise the snapshot and replace the config file with it
+     */
+    private void writeSnapshot(JsonElement snapshot)
     {
         synchronized (this.readWriteLock)
         {
-            FileWriter writer = null;
+            String content = this.gson.toJson(snapshot);
+            if (content.equals(this.lastContent) && this.configFile.exists())
+            {
+                return;
+            }
+
+            File tempFile = new File(this.configFile.getParentFile(), this.configFile.getName() + ".tmp");
+            FileOutputStream stream = null;
             try
             {
-                writer = new FileWriter(this.configFile);
-                this.gson.toJson(this.exposable, writer);
+                stream = new FileOutputStream(tempFile);
+                Writer writer = new OutputStreamWriter(stream);
+                writer.write(content);
+                writer.flush();
+                stream.getFD().sync();
+                stream.close();
+                stream = null;
+
+                try
+                {
+                    Files.move(tempFile.toPath(), this.configFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (AtomicMoveNotSupportedException ex)
+                {
+                    Files.move(tempFile.toPath(), this.configFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
 
-                this.dirty = false;
-                this.lastWrite = System.currentTimeMillis();
+                this.lastContent = content;
             }
             catch (Exception ex)
             {
-                ex.printStackTrace();
+                LiteLoaderLogger.warning(ex, "Error writing config file %s", this.configFile.getName());
+                tempFile.delete();
+
+                // Mark the config dirty again so that the write is retried
+                this.dirty = true;
             }
             finally
             {
                 try
                 {
-                    if (writer != null)
+                    if (stream != null)
                     {
-                        writer.close();
+                        stream.close();
                     }
                 }
                 catch (IOException ex)
@@ -267,7 +381,8 @@ public final class ExposableConfigWriter implements InstanceCreator<Exposable>
     }
 
     /**
-     * Force a write if dirty
+     * Force a write if dirty, call {@link #flush} to wait for the write to
+     * complete
      */
     void sync()
     {
@@ -277,6 +392,17 @@ public final class ExposableConfigWriter implements InstanceCreator<Exposable>
         }
     }
 
+    /**
+     * Wait for all writes queued before this call to complete
+     */
+    static void flush()
+    {
+        if (ExposableConfigWriter.ASYNC)
+        {
+            WriteBehind.flush();
+        }
+    }
+
     /**
      * Factory method which creates and intialises a new ExposableConfigWriter
      * for the specified exposable object and strategy.
@@ -307,4 +433,83 @@ public final class ExposableConfigWriter implements InstanceCreator<Exposable>
 
         return writer;
     }
+
+    /**
+     * Background thread which writes queued config snapshots in the order they
+     * were queued
+     */
+    static final class WriteBehind
+    {
+        private static ExecutorService executor;
+
+        private WriteBehind()
+        {
+        }
+
+        static void schedule(final ExposableConfigWriter writer)
+        {
+            WriteBehind.getExecutor().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        writer.writePending();
+                    }
+                    catch (Throwable th)
+                    {
+                        LiteLoaderLogger.warning(th, "Background write of config file %s failed", writer.getConfigFile().getName());
+                    }
+                }
+            });
+        }
+
+        static void flush()
+        {
+            Future<?> marker = WriteBehind.getExecutor().submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                }
+            });
+
+            try
+            {
+                marker.get(ExposableConfigWriter.FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException ex)
+            {
+                LiteLoaderLogger.warning(ex.getCause(), "Error waiting for config files to be written");
+            }
+            catch (TimeoutException ex)
+            {
+                LiteLoaderLogger.warning("Timed out waiting for config files to be written");
+            }
+        }
+
+        private static synchronized ExecutorService getExecutor()
+        {
+            if (WriteBehind.executor == null)
+            {
+                WriteBehind.executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "LiteLoader Config Writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+
+            return WriteBehind.executor;
+        }
+    }
 }
@@ -92,6 +92,12 @@ public final class PermissionsManagerClient implements PermissionsManager, Plugi
 
     private int menuTicks = 0;
 
+    /**
+     * True once the server has replied using the binary replication format,
+     * queries are sent in the legacy format until then
+     */
+    private boolean remoteSupportsBinary = false;
+
     /**
      * Get a reference to the singleton instance of the client permissions
      * manager.
@@ -219,6 +225,8 @@ public final class PermissionsManagerClient implements PermissionsManager, Plugi
             this.serverPermissions.clear();
         }
 
+        this.remoteSupportsBinary = false;
+
         for (Permissible permissible : this.permissibles)
         {
             permissible.onPermissionsCleared(this);
@@ -264,9 +272,15 @@ public final class PermissionsManagerClient implements PermissionsManager, Plugi
 
                 if (!query.modName.equals("all") || query.permissions.size() > 0)
                 {
-                    byte[] data = query.getBytes();
                     PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
-                    buffer.writeBytes(data);
+                    if (this.remoteSupportsBinary)
+                    {
+                        query.writeTo(buffer);
+                    }
+                    else
+                    {
+                        buffer.writeBytes(query.getBytes());
+                    }
                     ClientPluginChannels.sendMessage(ReplicatedPermissionsContainer.CHANNEL, buffer, ChannelPolicy.DISPATCH_ALWAYS);
                 }
             }
@@ -342,6 +356,11 @@ public final class PermissionsManagerClient implements PermissionsManager, Plugi
     {
         if (channel.equals(ReplicatedPermissionsContainer.CHANNEL) && !this.engine.isSinglePlayer())
         {
+            if (ReplicatedPermissionsContainer.isBinary(data))
+            {
+                this.remoteSupportsBinary = true;
+            }
+
             ServerPermissions modPermissions = null;
             try
             {
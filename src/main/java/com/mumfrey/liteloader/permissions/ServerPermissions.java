@@ -5,9 +5,6 @@
  */
 package com.mumfrey.liteloader.permissions;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import net.eq2online.permissions.ReplicatedPermissionsContainer;
 import net.minecraft.network.PacketBuffer;
 
@@ -19,11 +16,6 @@ import net.minecraft.network.PacketBuffer;
  */
 public class ServerPermissions implements ReplicatedPermissions
 {
-    /**
-     * Pattern for recognising valid permissions in the server feed
-     */
-    private static final Pattern permissionPattern = Pattern.compile("^([\\+\\-])(([a-z0-9]+\\.)*[a-z0-9\\*]+)$", Pattern.CASE_INSENSITIVE);
-
     protected String modName;
 
     /**
@@ -70,12 +62,10 @@ public class ServerPermissions implements ReplicatedPermissions
 
             for (String permissionString : response.permissions)
             {
-                Matcher permissionMatcher = permissionPattern.matcher(permissionString);
-
-                if (permissionMatcher.matches())
+                if (ServerPermissions.isValidPermission(permissionString))
                 {
-                    String name = permissionMatcher.group(2);
-                    boolean value = permissionMatcher.group(1).equals("+");
+                    String name = permissionString.substring(1);
+                    boolean value = permissionString.charAt(0) == '+';
 
                     this.permissions.setPermissionAndValue(name, value);
                 }
@@ -83,6 +73,52 @@ public class ServerPermissions implements ReplicatedPermissions
         }
     }
 
+    /**
+     * Check whether a permission from the server feed is valid. Valid
+     * permissions are prefixed with <tt>+</tt> or <tt>-</tt> and consist of
+     * dot-separated alphanumeric nodes, the last of which may contain
+     * <tt>*</tt>. Equivalent to the pattern
+     * <tt>^[+-]([a-z0-9]+\.)*[a-z0-9*]+$</tt> (case-insensitive) but
+     * without the overhead of a regex match for every permission.
+     * 
+     * @param permission
+     */
+    static boolean isValidPermission(String permission)
+    {
+        int length = permission.length();
+        if (length < 2 || (permission.charAt(0) != '+' && permission.charAt(0) != '-'))
+        {
+            return false;
+        }
+
+        boolean nodeEmpty = true, nodeWildcard = false;
+        for (int pos = 1; pos < length; pos++)
+        {
+            char c = permission.charAt(pos);
+            if (c == '.')
+            {
+                // Empty nodes and wildcards are only allowed in the last node
+                if (nodeEmpty || nodeWildcard) return false;
+                nodeEmpty = true;
+            }
+            else if (c == '*')
+            {
+                nodeWildcard = true;
+                nodeEmpty = false;
+            }
+            else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+            {
+                nodeEmpty = false;
+            }
+            else
+            {
+                return false;
+            }
+        }
+
+        return !nodeEmpty;
+    }
+
     /**
      * Get the permissible mod name
      */
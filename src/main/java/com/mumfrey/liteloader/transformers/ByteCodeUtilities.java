@@ -8,8 +8,9 @@ package com.mumfrey.liteloader.transformers;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -46,7 +47,44 @@ import net.minecraft.launchwrapper.Launch;
  */
 public abstract class ByteCodeUtilities
 {
-    private static Map<String, List<LocalVariableNode>> calculatedLocalVariables = new HashMap<String, List<LocalVariableNode>>();
+    /**
+     * Maximum number of generated local variable tables to retain
+     */
+    private static final int MAX_CALCULATED_LOCALS = 512;
+
+    /**
+     * Maximum number of local variable indices to retain, these are only
+     * reused while a single method is being inspected so this can be small
+     */
+    private static final int MAX_LOCAL_INDICES = 32;
+
+    /**
+     * Size-bounded map which discards the least recently used entry
+     */
+    static final class BoundedCache<K, V> extends LinkedHashMap<K, V>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        BoundedCache(int maxSize)
+        {
+            super(16, 0.75F, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+        {
+            return this.size() > this.maxSize;
+        }
+    }
+
+    private static final Map<String, List<LocalVariableNode>> calculatedLocalVariables
+            = Collections.synchronizedMap(new BoundedCache<String, List<LocalVariableNode>>(ByteCodeUtilities.MAX_CALCULATED_LOCALS));
+
+    private static final Map<MethodNode, LocalVariableIndex> localVariableIndices
+            = Collections.synchronizedMap(new BoundedCache<MethodNode, LocalVariableIndex>(ByteCodeUtilities.MAX_LOCAL_INDICES));
 
     private ByteCodeUtilities() {}
 
@@ -251,6 +289,11 @@ public abstract class ByteCodeUtilities
     {
         LocalVariableNode[] frame = new LocalVariableNode[method.maxLocals];
 
+        // Resolve the local variable table entries at the target node once up-front, this must happen before looking up the node position
+        // since generating the local variable table inserts labels into the method
+        LocalVariableIndex index = ByteCodeUtilities.getLocalVariableIndex(classNode, method);
+        LocalVariableNode[] locals = index.getLocalsAt(method.instructions.indexOf(node), frame.length);
+
         // Initialise implicit "this" reference in non-static methods
         if ((method.access & Opcodes.ACC_STATIC) == 0)
         {
@@ -272,7 +315,7 @@ public abstract class ByteCodeUtilities
 
                     if (localType instanceof String) // String refers to a reference type
                     {
-                        frame[framePos] = ByteCodeUtilities.getLocalVariableAt(classNode, method, node, framePos);
+                        frame[framePos] = locals[framePos];
                     }
                     else if (localType instanceof Integer) // Integer refers to a primitive type or other marker
                     {
@@ -285,7 +328,7 @@ public abstract class ByteCodeUtilities
                         }
                         else if (is32bitValue || is64bitValue)
                         {
-                            frame[framePos] = ByteCodeUtilities.getLocalVariableAt(classNode, method, node, framePos);
+                            frame[framePos] = locals[framePos];
 
                             if (is64bitValue)
                             {
@@ -313,7 +356,7 @@ public abstract class ByteCodeUtilities
             else if (insn instanceof VarInsnNode)
             {
                 VarInsnNode varNode = (VarInsnNode)insn;
-                frame[varNode.var] = ByteCodeUtilities.getLocalVariableAt(classNode, method, node, varNode.var);
+                frame[varNode.var] = locals[varNode.var];
             }
             else if (insn == node)
             {
@@ -338,23 +381,30 @@ public abstract class ByteCodeUtilities
      */
     public static LocalVariableNode getLocalVariableAt(ClassNode classNode, MethodNode method, AbstractInsnNode node, int var)
     {
-        LocalVariableNode localVariableNode = null;
-
-        int pos = method.instructions.indexOf(node);
+        LocalVariableIndex index = ByteCodeUtilities.getLocalVariableIndex(classNode, method);
+        return index.getLocalVariableAt(method.instructions.indexOf(node), var);
+    }
 
+    /**
+     * Fetches or builds the precomputed local variable index for the specified
+     * method, the index is rebuilt if the method has changed since it was last
+     * built.
+     * 
+     * @param classNode Containing class
+     * @param method Method
+     */
+    static LocalVariableIndex getLocalVariableIndex(ClassNode classNode, MethodNode method)
+    {
         List<LocalVariableNode> localVariables = ByteCodeUtilities.getLocalVariableTable(classNode, method);
-        for (LocalVariableNode local : localVariables)
+
+        LocalVariableIndex index = ByteCodeUtilities.localVariableIndices.get(method);
+        if (index == null || !index.isValidFor(method, localVariables))
         {
-            if (local.index != var) continue;
-            int start = method.instructions.indexOf(local.start);
-            int end = method.instructions.indexOf(local.end);
-            if (localVariableNode == null || start < pos && end > pos)
-            {
-                localVariableNode = local;
-            }
+            index = new LocalVariableIndex(method, localVariables);
+            ByteCodeUtilities.localVariableIndices.put(method, index);
         }
 
-        return localVariableNode;
+        return index;
     }
 
     /**
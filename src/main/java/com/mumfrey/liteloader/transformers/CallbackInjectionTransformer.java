@@ -139,6 +139,7 @@ public abstract class CallbackInjectionTransformer extends ClassTransformer
         ClassNode classNode = this.readClass(basicClass, true);
         String className = classNode.name.replace('/', '.');
         String classType = Type.getObjectType(classNode.name).toString();
+        boolean computeFrames = false;
 
         for (MethodNode method : classNode.methods)
         {
@@ -159,7 +160,12 @@ public abstract class CallbackInjectionTransformer extends ClassTransformer
                         LiteLoaderLogger.info("Injecting %s callback for %s in class %s", callback.getType().name().toLowerCase(),
                                 callback, className);
                         method.instructions.insert(callbackInsns);
-                        if (callback.injectReturn()) continue;
+                        if (callback.injectReturn())
+                        {
+                            // Early return leaves the original method body unreachable, so frames must be recomputed
+                            computeFrames = true;
+                            continue;
+                        }
                     }
                 }
             }
@@ -225,7 +231,7 @@ public abstract class CallbackInjectionTransformer extends ClassTransformer
             }
         }
 
-        return this.writeClass(classNode);
+        return this.writeClass(classNode, computeFrames);
     }
 
     /**
@@ -5,14 +5,32 @@
  */
 package com.mumfrey.liteloader.transformers;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.mumfrey.liteloader.util.log.LiteLoaderLogger;
 
 import net.minecraft.launchwrapper.IClassTransformer;
 
 /**
- * Base class for transformers which work via ClassNode
+ * Base class for transformers which work via ClassNode.
+ * 
+ * <p>Transformers deriving from this class share their ClassNode along the
+ * transformer chain: when a class is written without recomputing frames, the
+ * tree is retained alongside the written bytes and if the next transformer to
+ * read a class receives exactly the same byte array (ie. nothing else in the
+ * chain has modified the class in the meantime) it reuses the tree instead of
+ * parsing the class again. The time spent in each class is recorded and can
+ * be dumped using {@link #dumpTimings}.</p>
  * 
  * @author Adam Mummery-Smith
  */
@@ -21,42 +39,196 @@ public abstract class ClassTransformer implements IClassTransformer
     public static final String HORIZONTAL_RULE =
             "----------------------------------------------------------------------------------------------------";
 
+    /**
+     * Class tree most recently written on each thread, along with the bytes it
+     * was written to
+     */
+    private static final ThreadLocal<SharedClass> sharedClass = new ThreadLocal<SharedClass>();
+
+    /**
+     * Transformation timings by class name
+     */
+    private static final ConcurrentHashMap<String, ClassTimings> timings = new ConcurrentHashMap<String, ClassTimings>();
+
+    /**
+     * A written class and the tree it was written from
+     */
+    static final class SharedClass
+    {
+        final byte[] bytes;
+
+        final ClassNode classNode;
+
+        SharedClass(byte[] bytes, ClassNode classNode)
+        {
+            this.bytes = bytes;
+            this.classNode = classNode;
+        }
+    }
+
+    /**
+     * Accumulated timings for a single class
+     */
+    static final class ClassTimings
+    {
+        final String className;
+
+        int transforms, sharedReads, computedFrames;
+
+        long nanos;
+
+        ClassTimings(String className)
+        {
+            this.className = className;
+        }
+
+        synchronized void add(long nanos, boolean sharedRead, boolean computedFrames)
+        {
+            this.transforms++;
+            this.nanos += nanos;
+            if (sharedRead) this.sharedReads++;
+            if (computedFrames) this.computedFrames++;
+        }
+    }
+
     private ClassReader classReader;
     private ClassNode classNode;
 
+    /**
+     * Time at which the current class was read, and whether it was shared
+     */
+    private long readTime;
+    private boolean sharedRead;
+
     /**
      * @param basicClass
      */
     protected final ClassNode readClass(byte[] basicClass, boolean cacheReader)
     {
-        ClassReader classReader = new ClassReader(basicClass);
-        if (cacheReader) this.classReader = classReader;
+        this.readTime = System.nanoTime();
+
+        SharedClass shared = ClassTransformer.sharedClass.get();
+        ClassTransformer.sharedClass.remove();
+        if (shared != null && shared.bytes == basicClass)
+        {
+            this.classReader = null;
+            this.classNode = null;
+            this.sharedRead = true;
+
+            // The labels still carry the offsets resolved by the previous ClassWriter, which would corrupt the next write
+            for (MethodNode method : shared.classNode.methods)
+            {
+                method.instructions.resetLabels();
+            }
 
+            return shared.classNode;
+        }
+
+        this.sharedRead = false;
+        ClassReader classReader = new ClassReader(basicClass);
         ClassNode classNode = new ClassNode();
         classReader.accept(classNode, ClassReader.EXPAND_FRAMES);
+
+        if (cacheReader)
+        {
+            this.classReader = classReader;
+            this.classNode = classNode;
+        }
+
         return classNode;
     }
 
     /**
+     * Write the class, recomputing stack map frames
+     * 
      * @param classNode
      */
     protected final byte[] writeClass(ClassNode classNode)
     {
+        return this.writeClass(classNode, true);
+    }
+
+    /**
+     * Write the class. Transformers which don't add branches or otherwise
+     * invalidate the existing stack map frames should pass false for
+     * computeFrames, this is significantly faster and also allows the tree to
+     * be reused by the next transformer in the chain.
+     * 
+     * @param classNode
+     * @param computeFrames true to recompute stack map frames
+     */
+    protected final byte[] writeClass(ClassNode classNode, boolean computeFrames)
+    {
+        int flags = computeFrames ? ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS;
+
         // Use optimised writer for speed
-        if (this.classReader != null && this.classNode == classNode)
+        IsolatedClassWriter writer = this.classReader != null && this.classNode == classNode
+                ? new IsolatedClassWriter(this.classReader, flags)
+                : new IsolatedClassWriter(flags);
+        this.classReader = null;
+        this.classNode = null;
+
+        classNode.accept(writer);
+        byte[] bytes = writer.toByteArray();
+
+        // Frames in the tree are stale once they have been recomputed, so only share trees which were written as-is
+        if (!computeFrames)
         {
-            this.classNode = null;
-            IsolatedClassWriter writer = new IsolatedClassWriter(this.classReader, ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-            this.classReader = null;
-            classNode.accept(writer);
-            return writer.toByteArray();
+            ClassTransformer.sharedClass.set(new SharedClass(bytes, classNode));
         }
 
-        this.classNode = null;
+        if (this.readTime != 0L)
+        {
+            ClassTransformer.recordTiming(classNode.name, System.nanoTime() - this.readTime, this.sharedRead, computeFrames);
+            this.readTime = 0L;
+        }
 
-        IsolatedClassWriter writer = new IsolatedClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-        classNode.accept(writer);
-        return writer.toByteArray();
+        return bytes;
+    }
+
+    private static void recordTiming(String className, long nanos, boolean sharedRead, boolean computedFrames)
+    {
+        ClassTimings classTimings = ClassTransformer.timings.get(className);
+        if (classTimings == null)
+        {
+            classTimings = new ClassTimings(className);
+            ClassTimings existing = ClassTransformer.timings.putIfAbsent(className, classTimings);
+            if (existing != null) classTimings = existing;
+        }
+
+        classTimings.add(nanos, sharedRead, computedFrames);
+    }
+
+    /**
+     * Dump the time spent transforming each class to the log, slowest first
+     */
+    public static void dumpTimings()
+    {
+        List<ClassTimings> sorted = new ArrayList<ClassTimings>(ClassTransformer.timings.values());
+        Collections.sort(sorted, new Comparator<ClassTimings>()
+        {
+            @Override
+            public int compare(ClassTimings o1, ClassTimings o2)
+            {
+                return Long.compare(o2.nanos, o1.nanos);
+            }
+        });
+
+        long totalNanos = 0L;
+        LiteLoaderLogger.debug("ClassTransformer: Transformation Timings");
+        LiteLoaderLogger.debug(ClassTransformer.HORIZONTAL_RULE);
+        for (ClassTimings classTimings : sorted)
+        {
+            synchronized (classTimings)
+            {
+                LiteLoaderLogger.debug("%8.2fms %s (transforms=%d, shared=%d, frames=%d)", classTimings.nanos / 1000000.0,
+                        classTimings.className.replace('/', '.'), classTimings.transforms, classTimings.sharedReads, classTimings.computedFrames);
+                totalNanos += classTimings.nanos;
+            }
+        }
+        LiteLoaderLogger.debug(ClassTransformer.HORIZONTAL_RULE);
+        LiteLoaderLogger.debug("Transformed %d classes in %dms", sorted.size(), TimeUnit.NANOSECONDS.toMillis(totalNanos));
+        LiteLoaderLogger.debug(ClassTransformer.HORIZONTAL_RULE);
     }
 
     protected static String getSimpleClassName(ClassNode classNode)
@@ -0,0 +1,181 @@
+/*
+ * This file is part of LiteLoader.
+ * Copyright (C) 2012-16 Adam Mummery-Smith
+ * All Rights Reserved.
+ */
+package com.mumfrey.liteloader.transformers;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Precomputed view of a method's local variable table, with the start and end
+ * label of each local resolved to an instruction index up-front and the
+ * locals grouped by slot. This allows the local in each slot at a particular
+ * instruction to be resolved without searching the instruction list, which is
+ * otherwise quadratic for large methods.
+ *
+ * <p>An index is only valid as long as the method's instructions and local
+ * variable table are unchanged, {@link #isValidFor} should be checked before
+ * reusing a cached index.</p>
+ *
+ * @author Adam Mummery-Smith
+ */
+final class LocalVariableIndex
+{
+    private static final LocalVariableNode[] NONE = new LocalVariableNode[0];
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    /**
+     * Local variable table this index was built from
+     */
+    private final List<LocalVariableNode> localVariables;
+
+    /**
+     * Instruction count and local count when the index was built
+     */
+    private final int insnCount, localCount;
+
+    /**
+     * Locals for each slot, in local variable table order
+     */
+    private final LocalVariableNode[][] locals;
+
+    /**
+     * Start and end instruction indices for each local in {@link #locals}
+     */
+    private final int[][] starts, ends;
+
+    LocalVariableIndex(MethodNode method, List<LocalVariableNode> localVariables)
+    {
+        this.localVariables = localVariables;
+        this.insnCount = method.instructions.size();
+        this.localCount = localVariables.size();
+
+        Map<AbstractInsnNode, Integer> positions = new IdentityHashMap<AbstractInsnNode, Integer>();
+        int pos = 0;
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext())
+        {
+            positions.put(insn, Integer.valueOf(pos++));
+        }
+
+        int slots = method.maxLocals;
+        for (LocalVariableNode local : localVariables)
+        {
+            slots = Math.max(slots, local.index + 1);
+        }
+
+        List<List<LocalVariableNode>> bySlot = new ArrayList<List<LocalVariableNode>>(slots);
+        for (int slot = 0; slot < slots; slot++)
+        {
+            bySlot.add(null);
+        }
+
+        for (LocalVariableNode local : localVariables)
+        {
+            List<LocalVariableNode> slotLocals = bySlot.get(local.index);
+            if (slotLocals == null)
+            {
+                slotLocals = new ArrayList<LocalVariableNode>(2);
+                bySlot.set(local.index, slotLocals);
+            }
+            slotLocals.add(local);
+        }
+
+        this.locals = new LocalVariableNode[slots][];
+        this.starts = new int[slots][];
+        this.ends = new int[slots][];
+        for (int slot = 0; slot < slots; slot++)
+        {
+            List<LocalVariableNode> slotLocals = bySlot.get(slot);
+            if (slotLocals == null)
+            {
+                this.locals[slot] = LocalVariableIndex.NONE;
+                this.starts[slot] = this.ends[slot] = LocalVariableIndex.NO_POSITIONS;
+                continue;
+            }
+
+            int count = slotLocals.size();
+            this.locals[slot] = slotLocals.toArray(new LocalVariableNode[count]);
+            this.starts[slot] = new int[count];
+            this.ends[slot] = new int[count];
+            for (int i = 0; i < count; i++)
+            {
+                LocalVariableNode local = this.locals[slot][i];
+                this.starts[slot][i] = LocalVariableIndex.getPosition(positions, local.start);
+                this.ends[slot][i] = LocalVariableIndex.getPosition(positions, local.end);
+            }
+        }
+    }
+
+    private static int getPosition(Map<AbstractInsnNode, Integer> positions, AbstractInsnNode insn)
+    {
+        Integer pos = positions.get(insn);
+        return pos != null ? pos.intValue() : -1;
+    }
+
+    /**
+     * Get whether this index still reflects the specified method
+     */
+    boolean isValidFor(MethodNode method, List<LocalVariableNode> localVariables)
+    {
+        return this.localVariables == localVariables && this.localCount == localVariables.size()
+                && this.insnCount == method.instructions.size();
+    }
+
+    /**
+     * Get the local in the specified slot at the specified instruction index.
+     * As with the previous linear search, the last local whose range strictly
+     * contains the position wins, falling back to the first local in the slot
+     * if none do.
+     *
+     * @param pos Instruction index
+     * @param var Local variable slot
+     */
+    LocalVariableNode getLocalVariableAt(int pos, int var)
+    {
+        if (var < 0 || var >= this.locals.length)
+        {
+            return null;
+        }
+
+        LocalVariableNode[] slotLocals = this.locals[var];
+        int[] slotStarts = this.starts[var];
+        int[] slotEnds = this.ends[var];
+
+        LocalVariableNode localVariableNode = null;
+        for (int i = 0; i < slotLocals.length; i++)
+        {
+            if (localVariableNode == null || slotStarts[i] < pos && slotEnds[i] > pos)
+            {
+                localVariableNode = slotLocals[i];
+            }
+        }
+
+        return localVariableNode;
+    }
+
+    /**
+     * Resolve the local in every slot at the specified instruction index
+     *
+     * @param pos Instruction index
+     * @param size Number of slots to resolve
+     */
+    LocalVariableNode[] getLocalsAt(int pos, int size)
+    {
+        LocalVariableNode[] resolved = new LocalVariableNode[size];
+        for (int var = 0; var < size; var++)
+        {
+            resolved[var] = this.getLocalVariableAt(pos, var);
+        }
+
+        return resolved;
+    }
+}
@@ -395,6 +395,9 @@ public class Event implements Comparable<Event>
 
         boolean pushReturnValue = false;
 
+        // Allow subclasses to skip the event entirely, eg. when nothing is listening
+        LabelNode skipEvent = this.injectGuard(insns);
+
         // If this is a ReturnEventInfo AND we are right before a RETURN opcode (so we can expect the *original* return
         // value to be on the stack, then we dup the return value into a local var so we can push it later when we invoke 
         // the ReturnEventInfo ctor
@@ -406,9 +409,7 @@ public class Event implements Comparable<Event>
         }
 
         // Instance the EventInfo for this event
-        insns.add(new TypeInsnNode(Opcodes.NEW, this.eventInfoClass)); ctorMAXS++;
-        insns.add(new InsnNode(Opcodes.DUP)); ctorMAXS++; invokeMAXS++;
-        ctorMAXS += this.invokeEventInfoConstructor(insns, cancellable, pushReturnValue, marshallVar);
+        ctorMAXS += this.createEventInfo(insns, cancellable, pushReturnValue, marshallVar); invokeMAXS++;
         insns.add(new VarInsnNode(Opcodes.ASTORE, marshallVar));
 
         // Call the event handler method in the proxy
@@ -426,6 +427,11 @@ public class Event implements Comparable<Event>
             this.injectCancellationCode(insns, injectionPoint, marshallVar);
         }
 
+        if (skipEvent != null)
+        {
+            insns.add(skipEvent);
+        }
+
         // Inject our generated code into the method
         this.method.instructions.insertBefore(injectionPoint, insns);
         this.method.maxStack = Math.max(this.method.maxStack, Math.max(this.methodMAXS + ctorMAXS, this.methodMAXS + invokeMAXS));
@@ -446,6 +452,32 @@ public class Event implements Comparable<Event>
         return eventDescriptor + ")V";
     }
 
+    /**
+     * Inject an optional guard ahead of the event, the guard should jump to
+     * the returned label if the event should not be fired. The default
+     * implementation does not inject a guard and returns null.
+     * 
+     * @param insns Instruction list to append to
+     * @return label to jump to in order to skip the event, or null if no guard
+     *      was injected
+     */
+    protected LabelNode injectGuard(InsnList insns)
+    {
+        return null;
+    }
+
+    /**
+     * Push a new EventInfo for this event onto the stack
+     * 
+     * @return stack size required
+     */
+    protected int createEventInfo(InsnList insns, boolean cancellable, boolean pushReturnValue, int marshallVar)
+    {
+        insns.add(new TypeInsnNode(Opcodes.NEW, this.eventInfoClass));
+        insns.add(new InsnNode(Opcodes.DUP));
+        return 2 + this.invokeEventInfoConstructor(insns, cancellable, pushReturnValue, marshallVar);
+    }
+
     protected int invokeEventInfoConstructor(InsnList insns, boolean cancellable, boolean pushReturnValue, int marshallVar)
     {
         int ctorMAXS = 0;
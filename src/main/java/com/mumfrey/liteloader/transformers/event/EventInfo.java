@@ -24,11 +24,11 @@ public class EventInfo<S> implements Cancellable
     protected static final String STRING = "Ljava/lang/String;";
     protected static final String OBJECT = "Ljava/lang/Object;";
 
-    private final String name;
+    private String name;
 
-    private final S source;
+    private S source;
 
-    private final boolean cancellable;
+    private boolean cancellable;
 
     private boolean cancelled;
 
@@ -39,6 +39,17 @@ public class EventInfo<S> implements Cancellable
         this.cancellable = cancellable;
     }
 
+    /**
+     * Reinitialise this EventInfo so that it can be reused for another event
+     */
+    protected void reset(String name, S source, boolean cancellable)
+    {
+        this.name = name;
+        this.source = source;
+        this.cancellable = cancellable;
+        this.cancelled = false;
+    }
+
     public S getSource()
     {
         return this.source;
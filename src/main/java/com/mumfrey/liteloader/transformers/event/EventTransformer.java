@@ -254,6 +254,7 @@ public final class EventTransformer extends ClassTransformer
         if (mappings == null) return basicClass;
 
         ClassNode classNode = this.readClass(basicClass, true);
+        boolean injected = false;
 
         for (MethodNode method : classNode.methods)
         {
@@ -262,6 +263,7 @@ public final class EventTransformer extends ClassTransformer
             if (methodInjections != null)
             {
                 this.injectIntoMethod(classNode, signature, method, methodInjections);
+                injected = true;
             }
         }
 
@@ -276,7 +278,8 @@ public final class EventTransformer extends ClassTransformer
             classNode.accept(new CheckClassAdapter(writer));
         }
 
-        byte[] bytes = this.writeClass(classNode);
+        // Injected events introduce branches, accessors on their own do not
+        byte[] bytes = this.writeClass(classNode, injected);
 
         if (EventTransformer.DUMP)
         {
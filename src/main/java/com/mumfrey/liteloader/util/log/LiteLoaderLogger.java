@@ -8,12 +8,13 @@ package com.mumfrey.liteloader.util.log;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.MissingFormatArgumentException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -23,6 +24,11 @@ import org.apache.logging.log4j.core.appender.AbstractAppender;
 
 /**
  * Gateway class for the log4j logger
+ * 
+ * <p>The most recent log events are kept in a fixed-size ring which appenders
+ * write to without locking. Events are stored raw and only formatted into
+ * lines when they are read, readers use {@link #readLog} to fetch only the
+ * lines logged since their last read.</p>
  *
  * @author Adam Mummery-Smith
  */
@@ -32,14 +38,92 @@ public class LiteLoaderLogger extends AbstractAppender
 
     private static final int LOG_TAIL_SIZE = 500;
 
+    /**
+     * Number of events kept in the ring, must be a power of two
+     */
+    private static final int LOG_RING_SIZE = 512;
+
     private static Logger logger = (Logger)LogManager.getLogger("LiteLoader");
 
-    private static Deque<String> logTail = new LinkedList<String>();
+    /**
+     * Ring of recent events, the event with index <tt>n</tt> is stored in slot
+     * <tt>n % LOG_RING_SIZE</tt> until it is overwritten
+     */
+    private static final AtomicReferenceArray<LogEntry> logRing = new AtomicReferenceArray<LogEntry>(LiteLoaderLogger.LOG_RING_SIZE);
 
-    private static long logIndex = 0;
+    /**
+     * Index of the next event to be appended
+     */
+    private static final AtomicLong logIndex = new AtomicLong();
+
+    private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>()
+    {
+        @Override
+        protected SimpleDateFormat initialValue()
+        {
+            return new SimpleDateFormat("[HH:mm:ss] ");
+        }
+    };
 
     private static Throwable lastThrowable;
 
+    /**
+     * Raw log event, formatted into lines the first time it is read
+     */
+    static final class LogEntry
+    {
+        final long index;
+        final long timestamp;
+        final Level level;
+        final String message;
+        final String thrown;
+
+        private volatile String[] lines;
+
+        LogEntry(long index, long timestamp, Level level, String message, String thrown)
+        {
+            this.index = index;
+            this.timestamp = timestamp;
+            this.level = level;
+            this.message = message;
+            this.thrown = thrown;
+        }
+
+        String[] getLines()
+        {
+            String[] lines = this.lines;
+            if (lines == null)
+            {
+                lines = this.lines = this.format();
+            }
+
+            return lines;
+        }
+
+        private String[] format()
+        {
+            String date = LiteLoaderLogger.dateFormat.get().format(new Date(this.timestamp));
+            List<String> lines = new ArrayList<String>(this.thrown != null ? 2 : 1);
+
+            String message = this.message != null ? this.message : "null";
+            int start = 0;
+            for (int lineFeedPos = message.indexOf('\n'); lineFeedPos > -1; lineFeedPos = message.indexOf('\n', start))
+            {
+                lines.add(date + message.substring(start, lineFeedPos));
+                start = lineFeedPos + 1;
+            }
+
+            lines.add(date + message.substring(start));
+
+            if (this.thrown != null)
+            {
+                lines.add(date + this.thrown);
+            }
+
+            return lines.toArray(new String[lines.size()]);
+        }
+    }
+
     /**
      * Provides some wiggle-room within log4j's Level so we can have different
      * levels of logging on the same, um.. Level
@@ -85,60 +169,71 @@ public class LiteLoaderLogger extends AbstractAppender
     @Override
     public void append(LogEvent event)
     {
-        synchronized (LiteLoaderLogger.logTail)
-        {
-            LiteLoaderLogger.logIndex++;
-            this.append(event.getTimeMillis(), event.getMessage().getFormattedMessage());
-            Throwable thrown = event.getThrown();
-            if (thrown != null)
-            {
-                this.append(event.getTimeMillis(), String.format("\2474%s: \2476%s", thrown.getClass().getSimpleName(), thrown.getMessage()));
-            }
-        }
+        Throwable thrown = event.getThrown();
+        String thrownMessage = thrown != null ? String.format("\2474%s: \2476%s", thrown.getClass().getSimpleName(), thrown.getMessage()) : null;
+
+        // Log4j may reuse the event and message, so keep the message text rather than the message itself
+        long index = LiteLoaderLogger.logIndex.getAndIncrement();
+        LogEntry entry = new LogEntry(index, event.getTimeMillis(), event.getLevel(), event.getMessage().getFormattedMessage(), thrownMessage);
+        LiteLoaderLogger.logRing.set((int)index & (LiteLoaderLogger.LOG_RING_SIZE - 1), entry);
     }
 
     /**
-     * @param message
+     * Get the index of the next event to be logged, this changes whenever a
+     * new event is logged
      */
-    private void append(long timestamp, String message)
+    public static long getLogIndex()
     {
-        String date = new java.text.SimpleDateFormat("[HH:mm:ss] ").format(new Date(timestamp));
-
-        while (message.indexOf('\n') > -1)
-        {
-            int lineFeedPos = message.indexOf('\n');
-            this.appendLine(date + message.substring(0, lineFeedPos));
-            message = message.substring(lineFeedPos + 1);
-        }
-
-        this.appendLine(date + message);
+        return LiteLoaderLogger.logIndex.get();
     }
 
     /**
-     * @param line
+     * Read the lines for events logged since the specified index. If events
+     * after the specified index have already been discarded from the ring,
+     * reading starts at the oldest event still available.
+     * 
+     * @param index index returned from the previous call, or 0 to read all
+     *      available lines
+     * @param lines list to append the lines to
+     * @return index to pass to the next call
      */
-    private void appendLine(String line)
+    public static long readLog(long index, List<String> lines)
     {
-        LiteLoaderLogger.logTail.add(line);
+        long end = LiteLoaderLogger.logIndex.get();
+        long start = Math.max(index, end - LiteLoaderLogger.LOG_RING_SIZE);
 
-        if (LiteLoaderLogger.logTail.size() > LiteLoaderLogger.LOG_TAIL_SIZE)
+        for (long next = start; next < end; next++)
         {
-            LiteLoaderLogger.logTail.remove();
+            LogEntry entry = LiteLoaderLogger.logRing.get((int)next & (LiteLoaderLogger.LOG_RING_SIZE - 1));
+            if (entry == null || entry.index < next)
+            {
+                // Index has been claimed but the event has not been stored yet, read it next time
+                return next;
+            }
+
+            if (entry.index == next)
+            {
+                for (String line : entry.getLines())
+                {
+                    lines.add(line);
+                }
+            }
         }
-    }
 
-    public static long getLogIndex()
-    {
-        return LiteLoaderLogger.logIndex;
+        return end;
     }
 
+    /**
+     * Get the most recent log lines
+     */
     public static List<String> getLogTail()
     {
         List<String> log = new ArrayList<String>();
+        LiteLoaderLogger.readLog(0L, log);
 
-        synchronized (LiteLoaderLogger.logTail)
+        if (log.size() > LiteLoaderLogger.LOG_TAIL_SIZE)
         {
-            log.addAll(LiteLoaderLogger.logTail);
+            return new ArrayList<String>(log.subList(log.size() - LiteLoaderLogger.LOG_TAIL_SIZE, log.size()));
         }
 
         return log;
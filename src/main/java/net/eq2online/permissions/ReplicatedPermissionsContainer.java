@@ -5,7 +5,6 @@
  */
 package net.eq2online.permissions;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -15,6 +14,7 @@ import java.util.Collection;
 import java.util.Set;
 import java.util.TreeSet;
 
+import io.netty.buffer.ByteBufInputStream;
 import net.minecraft.network.PacketBuffer;
 
 /**
@@ -53,6 +53,22 @@ public class ReplicatedPermissionsContainer implements Serializable
 
     public static final String CHANNEL = "PERMISSIONSREPL";
 
+    /**
+     * Marker for the binary format, serialised objects always begin with
+     * 0xACED so the two formats can't be confused
+     */
+    private static final byte BINARY_MAGIC = 0x50;
+
+    /**
+     * Binary format version
+     */
+    private static final byte BINARY_VERSION = 1;
+
+    /**
+     * Maximum length of the strings in the binary format
+     */
+    private static final int MAX_STRING_LENGTH = 32767;
+
     public ReplicatedPermissionsContainer()
     {
     }
@@ -102,22 +118,58 @@ public class ReplicatedPermissionsContainer implements Serializable
     }
 
     /**
-     * Deserialises a replicated permissions container from a byte array
+     * Write this container to the supplied buffer in the binary format: a
+     * marker byte and version byte, followed by the mod name, mod version,
+     * cache time and the length-prefixed list of permissions. Only hosts which
+     * are known to understand the binary format should be sent this format,
+     * use {@link #getBytes} otherwise.
      * 
-     * @param data Byte array containing the serialised data
-     * @return new container or null if deserialisation failed
+     * @param data Buffer to write to
      */
-    public static ReplicatedPermissionsContainer fromPacketBuffer(PacketBuffer data)
+    public void writeTo(PacketBuffer data)
     {
-        try
+        data.writeByte(ReplicatedPermissionsContainer.BINARY_MAGIC);
+        data.writeByte(ReplicatedPermissionsContainer.BINARY_VERSION);
+        data.writeString(this.modName != null ? this.modName : "all");
+        data.writeFloat(this.modVersion != null ? this.modVersion.floatValue() : 0.0F);
+        data.writeVarLong(this.remoteCacheTimeSeconds);
+        data.writeVarInt(this.permissions.size());
+        for (String permission : this.permissions)
         {
-            int readableBytes = data.readableBytes();
-            if (readableBytes == 0) return null;
+            data.writeString(permission);
+        }
+    }
 
-            byte[] payload = new byte[readableBytes];
-            data.readBytes(payload);
+    /**
+     * Get whether the supplied buffer contains a container in the binary
+     * format, does not modify the buffer
+     * 
+     * @param data
+     */
+    public static boolean isBinary(PacketBuffer data)
+    {
+        return data.isReadable() && data.getByte(data.readerIndex()) == ReplicatedPermissionsContainer.BINARY_MAGIC;
+    }
 
-            ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(payload));
+    /**
+     * Reads a replicated permissions container from a packet buffer, in
+     * either the binary format or the legacy serialised format
+     * 
+     * @param data Buffer containing the container data
+     * @return new container or null if the data could not be read
+     */
+    public static ReplicatedPermissionsContainer fromPacketBuffer(PacketBuffer data)
+    {
+        if (!data.isReadable()) return null;
+
+        if (ReplicatedPermissionsContainer.isBinary(data))
+        {
+            return ReplicatedPermissionsContainer.readBinary(data);
+        }
+
+        try
+        {
+            ObjectInputStream inputStream = new ObjectInputStream(new ByteBufInputStream(data));
             ReplicatedPermissionsContainer object = (ReplicatedPermissionsContainer)inputStream.readObject();
             return object;
         }
@@ -136,4 +188,41 @@ public class ReplicatedPermissionsContainer implements Serializable
 
         return null;
     }
+
+    private static ReplicatedPermissionsContainer readBinary(PacketBuffer data)
+    {
+        try
+        {
+            data.readByte();
+            if (data.readByte() != ReplicatedPermissionsContainer.BINARY_VERSION)
+            {
+                return null;
+            }
+
+            ReplicatedPermissionsContainer object = new ReplicatedPermissionsContainer();
+            object.modName = data.readString(ReplicatedPermissionsContainer.MAX_STRING_LENGTH);
+            object.modVersion = Float.valueOf(data.readFloat());
+            object.remoteCacheTimeSeconds = data.readVarLong();
+
+            // Each permission takes at least one byte, so a count larger than the remaining data is bogus
+            int count = data.readVarInt();
+            if (count < 0 || count > data.readableBytes())
+            {
+                return null;
+            }
+
+            for (int i = 0; i < count; i++)
+            {
+                object.permissions.add(data.readString(ReplicatedPermissionsContainer.MAX_STRING_LENGTH));
+            }
+
+            return object;
+        }
+        catch (RuntimeException e)
+        {
+            // Truncated or malformed data
+        }
+
+        return null;
+    }
 }